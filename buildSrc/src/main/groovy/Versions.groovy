@@ -21,6 +21,7 @@ class Versions {
 
     //test
     static final String junitVersion = "5.10.1"
+    static final String jmhVersion = "1.37"
 
     // spring
     static final String springBootVersion = "3.4.1"
@@ -0,0 +1,51 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChaCha20-Poly1305 against AES-256-GCM per payload size, compare with {@link AeadAlgorithm#fastest()} on the machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AeadAlgorithmBenchmark {
+    @Param({"CHACHA20_POLY_1305", "AES_256_GCM"})
+    private AeadAlgorithm algorithm;
+
+    @Param({"64", "1024", "16384", "1048576"})
+    private int size;
+
+    private SecretKey key;
+    private byte[] message;
+    private byte[] sealed;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, algorithm.getKeyAlgorithm());
+        message = new byte[size];
+        random.nextBytes(message);
+        sealed = CryptoUtils.encrypt(message, key, algorithm);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws GeneralSecurityException {
+        return CryptoUtils.encrypt(message, key, algorithm);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws GeneralSecurityException {
+        return CryptoUtils.decrypt(sealed, key, algorithm);
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CertificateIssuer} against {@link CertUtils#generateSignedCertificate} for RSA-2048 client certificates, and
+ * a batch of {@link CertificateIssuer#issueAll(List)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CertificateIssuerBenchmark {
+    private static final int BATCH_SIZE = 256;
+
+    private final X500Principal subject = new X500Principal("CN=client");
+    private KeyPair caKeyPair;
+    private X509Certificate caCert;
+    private KeyPair clientKeyPair;
+    private CertificateIssuer issuer;
+    private CertificateIssuer.CertRequest request;
+    private List<CertificateIssuer.CertRequest> batch;
+
+    @Setup
+    public void setup() throws Exception {
+        caKeyPair = CertUtils.generateRSAPair();
+        caCert = CertUtils.generateSignedCertificate(new X500Principal("CN=ca"), null, "SHA256withRSA", null, null, caKeyPair, 365);
+        clientKeyPair = CertUtils.generateRSAPair();
+        issuer = new CertificateIssuer(caKeyPair.getPrivate(), caCert);
+        request = new CertificateIssuer.CertRequest(subject, null, clientKeyPair.getPublic(), Duration.ofHours(1));
+        batch = Collections.nCopies(BATCH_SIZE, request);
+    }
+
+    @Benchmark
+    public X509Certificate generateSignedCertificate() throws Exception {
+        return CertUtils.generateSignedCertificate(subject, null, null, caKeyPair.getPrivate(), caCert, clientKeyPair, 1);
+    }
+
+    @Benchmark
+    public X509Certificate issue() throws Exception {
+        return issuer.issue(request);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<X509Certificate> issueAll() throws Exception {
+        return issuer.issueAll(batch);
+    }
+}
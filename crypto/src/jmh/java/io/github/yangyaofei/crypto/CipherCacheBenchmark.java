@@ -0,0 +1,67 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small message encryption: a new {@link Cipher} per call against the per thread cached cipher and the batch API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherCacheBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"64", "1024"})
+    private int size;
+
+    private final SecureRandom random = new SecureRandom();
+    private SecretKey key;
+    private byte[] message;
+    private List<byte[]> batch;
+
+    @Setup
+    public void setup() {
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "ChaCha20");
+        message = new byte[size];
+        random.nextBytes(message);
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(message);
+        }
+    }
+
+    @Benchmark
+    public byte[] newCipherPerCall() throws GeneralSecurityException {
+        byte[] nonce = new byte[12];
+        random.nextBytes(nonce);
+        Cipher cipher = Cipher.getInstance("ChaCha20-Poly1305");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(nonce));
+        return cipher.doFinal(message);
+    }
+
+    @Benchmark
+    public byte[] cachedCipher() throws GeneralSecurityException {
+        return CryptoUtils.encrypt(message, key);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<byte[]> encryptAll() throws GeneralSecurityException {
+        return CryptoUtils.encryptAll(batch, key);
+    }
+}
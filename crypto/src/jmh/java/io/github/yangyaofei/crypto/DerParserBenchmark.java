@@ -0,0 +1,49 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks every TLV of a DER encoded RSA-4096 PKCS#8 key with {@link DerParser}, run with {@code -prof gc} to see the
+ * allocation per walk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DerParserBenchmark {
+    private byte[] der;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(4096);
+        der = generator.generateKeyPair().getPrivate().getEncoded();
+    }
+
+    @Benchmark
+    public int walk() throws IOException {
+        return walk(new DerParser(der));
+    }
+
+    private static int walk(DerParser parser) throws IOException {
+        int count = 0;
+        while (parser.hasRemaining()) {
+            DerParser.Asn1Object object = parser.readAsn1Object();
+            count++;
+            if (object.isConstructed()) {
+                count += walk(object.getParser());
+            } else if (object.getType() == DerParser.OCTET_STRING) {
+                // the PKCS#1 key inside the PKCS#8 octet string
+                count += walk(object.getEncapsulatedParser());
+            }
+        }
+        return count;
+    }
+}
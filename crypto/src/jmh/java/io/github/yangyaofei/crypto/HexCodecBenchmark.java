@@ -0,0 +1,80 @@
+package io.github.yangyaofei.crypto;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HexCodec} against {@link HexFormat} and commons-codec {@link Hex}, the last pair encodes into a reused buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark {
+    @Param({"32", "1024"})
+    private int size;
+
+    private final HexFormat hexFormat = HexFormat.of();
+    private byte[] bytes;
+    private String hex;
+    private char[] chars;
+    private byte[] decoded;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        hex = HexCodec.encode(bytes);
+        chars = new char[2 * size];
+        decoded = new byte[size];
+    }
+
+    @Benchmark
+    public String encodeHexCodec() {
+        return HexCodec.encode(bytes);
+    }
+
+    @Benchmark
+    public String encodeHexFormat() {
+        return hexFormat.formatHex(bytes);
+    }
+
+    @Benchmark
+    public String encodeCommonsCodec() {
+        return Hex.encodeHexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] decodeHexCodec() {
+        return HexCodec.decode(hex);
+    }
+
+    @Benchmark
+    public byte[] decodeHexFormat() {
+        return hexFormat.parseHex(hex);
+    }
+
+    @Benchmark
+    public byte[] decodeCommonsCodec() throws DecoderException {
+        return Hex.decodeHex(hex);
+    }
+
+    @Benchmark
+    public char[] encodeHexCodecIntoBuffer() {
+        HexCodec.encode(bytes, 0, bytes.length, chars, 0);
+        return chars;
+    }
+
+    @Benchmark
+    public byte[] decodeHexCodecIntoBuffer() {
+        HexCodec.decode(hex, 0, hex.length(), decoded, 0);
+        return decoded;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RandomSource} against a {@link SecureRandom} shared by all threads and a new {@code SHA1PRNG} per call, as
+ * {@link SecretUtils#genSecret} did, on 4 threads, and {@link SecretUtils#genSecrets} against single secrets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RandomSourceBenchmark {
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"32", "4096"})
+    private int size;
+
+    private final SecureRandom shared = new SecureRandom();
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        private byte[] bytes;
+
+        @Setup
+        public void setup(RandomSourceBenchmark benchmark) {
+            bytes = new byte[benchmark.size];
+        }
+    }
+
+    @Benchmark
+    public byte[] randomSource(Buffer buffer) {
+        RandomSource.nextBytes(buffer.bytes);
+        return buffer.bytes;
+    }
+
+    @Benchmark
+    public byte[] sharedSecureRandom(Buffer buffer) {
+        shared.nextBytes(buffer.bytes);
+        return buffer.bytes;
+    }
+
+    @Benchmark
+    public byte[] newSha1PrngPerCall(Buffer buffer) throws NoSuchAlgorithmException {
+        SecureRandom.getInstance("SHA1PRNG").nextBytes(buffer.bytes);
+        return buffer.bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public String[] genSecrets() {
+        return SecretUtils.genSecrets(32, BATCH_SIZE);
+    }
+
+    @Benchmark
+    public String genSecret() {
+        return SecretUtils.genSecret(32);
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 128 bit secrets of {@link SecretFormat} against {@link SecretUtils#genSecret(int)}, as strings and into a reused
+ * buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecretFormatBenchmark {
+    private final char[] chars = new char[32];
+    private final byte[] bytes = new byte[32];
+
+    @Benchmark
+    public String genSecretBigInteger() {
+        return SecretUtils.genSecret(16);
+    }
+
+    @Benchmark
+    public String hex() {
+        return SecretFormat.HEX.generate(32);
+    }
+
+    @Benchmark
+    public String base64Url() {
+        return SecretFormat.BASE64URL.generate(22);
+    }
+
+    @Benchmark
+    public String alphanumeric() {
+        return SecretFormat.ALPHANUMERIC.generate(22);
+    }
+
+    @Benchmark
+    public char[] hexIntoChars() {
+        SecretFormat.HEX.generate(chars, 0, 32);
+        return chars;
+    }
+
+    @Benchmark
+    public byte[] base32IntoBytes() {
+        SecretFormat.BASE32.generate(bytes, 0, 26);
+        return bytes;
+    }
+}
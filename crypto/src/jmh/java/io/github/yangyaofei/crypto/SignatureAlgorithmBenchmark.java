@@ -0,0 +1,75 @@
+package io.github.yangyaofei.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key generation, signing, verification and certificate issuance per {@link KeyPairAlgorithm}, to compare the cost of
+ * RSA against EC P-256 and Ed25519 for a CA. Signing and verification are over 512 bytes, about the size of the
+ * to-be-signed part of a client certificate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureAlgorithmBenchmark {
+    @Param({"RSA_2048", "EC_P256", "ED25519"})
+    private KeyPairAlgorithm algorithm;
+
+    private final byte[] data = new byte[512];
+    private KeyPair keyPair;
+    private Signature signer;
+    private Signature verifier;
+    private byte[] signature;
+    private CertificateIssuer issuer;
+    private CertificateIssuer.CertRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        new Random(42).nextBytes(data);
+        keyPair = CertUtils.generateKeyPair(algorithm);
+        signer = Signature.getInstance(algorithm.getSignatureAlgorithm());
+        signer.initSign(keyPair.getPrivate());
+        verifier = Signature.getInstance(algorithm.getSignatureAlgorithm());
+        verifier.initVerify(keyPair.getPublic());
+        signature = sign();
+        X509Certificate caCert = CertUtils.generateSignedCertificate(
+                new X500Principal("CN=ca"), null, null, null, null, keyPair, 365
+        );
+        issuer = new CertificateIssuer(keyPair.getPrivate(), caCert);
+        KeyPair clientKeyPair = CertUtils.generateKeyPair(algorithm);
+        request = new CertificateIssuer.CertRequest(new X500Principal("CN=client"), null, clientKeyPair.getPublic(), Duration.ofHours(1));
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return algorithm.generate();
+    }
+
+    @Benchmark
+    public byte[] sign() throws GeneralSecurityException {
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws GeneralSecurityException {
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+
+    @Benchmark
+    public X509Certificate issue() throws Exception {
+        return issuer.issue(request);
+    }
+}
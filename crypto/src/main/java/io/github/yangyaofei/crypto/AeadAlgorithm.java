@@ -0,0 +1,98 @@
+package io.github.yangyaofei.crypto;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.lang.management.ManagementFactory;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * AEAD algorithms of {@link CryptoUtils}, both with a 256bit key, a 12byte nonce and a 16byte tag.
+ * <p>
+ * ChaCha20-Poly1305 is fast in software everywhere, AES-256-GCM is several times faster on CPUs with AES
+ * instructions (AES-NI, ARMv8 crypto extensions). Use {@link #fastest()} to pick by the CPU the JVM runs on, but store
+ * the picked algorithm with the data since other machines may pick differently.
+ */
+public enum AeadAlgorithm {
+    CHACHA20_POLY_1305((byte) 1, "ChaCha20-Poly1305", "ChaCha20"),
+    AES_256_GCM((byte) 2, "AES/GCM/NoPadding", "AES");
+
+    private static final int TAG_BITS = 128;
+    private static final AeadAlgorithm FASTEST = detectFastest();
+
+    private final byte id;
+    private final String transformation;
+    private final String keyAlgorithm;
+
+    AeadAlgorithm(byte id, String transformation, String keyAlgorithm) {
+        this.id = id;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    /**
+     * The transformation for {@link javax.crypto.Cipher#getInstance(String)}.
+     *
+     * @return the transformation
+     */
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * The algorithm of the {@link javax.crypto.SecretKey} the cipher accepts, e.g. for {@link javax.crypto.spec.SecretKeySpec}.
+     *
+     * @return the key algorithm
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * The fastest algorithm on this machine: AES-256-GCM if the JVM uses the AES instructions of the CPU,
+     * ChaCha20-Poly1305 otherwise.
+     *
+     * @return the algorithm
+     */
+    public static AeadAlgorithm fastest() {
+        return FASTEST;
+    }
+
+    byte id() {
+        return id;
+    }
+
+    static AeadAlgorithm fromId(byte id) {
+        for (AeadAlgorithm algorithm : values()) {
+            if (algorithm.id == id) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown AEAD algorithm id " + id);
+    }
+
+    AlgorithmParameterSpec parameterSpec(byte[] nonce) {
+        return parameterSpec(nonce, 0, nonce.length);
+    }
+
+    AlgorithmParameterSpec parameterSpec(byte[] nonce, int offset, int length) {
+        return switch (this) {
+            case CHACHA20_POLY_1305 -> new IvParameterSpec(nonce, offset, length);
+            case AES_256_GCM -> new GCMParameterSpec(TAG_BITS, nonce, offset, length);
+        };
+    }
+
+    private static AeadAlgorithm detectFastest() {
+        try {
+            // UseAES is turned on by HotSpot only if the CPU has AES instructions
+            HotSpotDiagnosticMXBean diagnostic = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (diagnostic != null && Boolean.parseBoolean(diagnostic.getVMOption("UseAES").getValue())) {
+                return AES_256_GCM;
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // not HotSpot or no jdk.management module, fall back to the algorithm which is fast without hardware support
+        }
+        return CHACHA20_POLY_1305;
+    }
+}
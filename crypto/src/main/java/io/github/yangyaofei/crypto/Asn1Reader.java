@@ -0,0 +1,440 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streaming ASN.1 BER/DER reader, for structures too large for {@link DerParser} like big CRLs, CMS or PKCS#12 files.
+ * <p>
+ * The reader pulls events with {@link #next()}, or pushes them to a {@link Handler} with {@link #read(Handler)}: the
+ * start and end of constructed types and primitives. A primitive is reported with its tag and value span only, the
+ * caller reads the value with {@link #readValue()} or {@link #valueStream()}, or leaves it and it's skipped. Memory is
+ * bounded by the read buffer and the nesting depth, whatever the size of the input.
+ * <p>
+ * Tags of all classes and of more than one octet are read, lengths of up to 8 octets, and constructed types of BER
+ * indefinite length which end with an end-of-contents. A reader is not thread safe.
+ */
+@SuppressWarnings("unused")
+public final class Asn1Reader implements Closeable {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_DEPTH = 256;
+
+    /**
+     * The events of the reader.
+     */
+    public enum Event {
+        START_CONSTRUCTED,
+        END_CONSTRUCTED,
+        PRIMITIVE,
+        END_DOCUMENT
+    }
+
+    /**
+     * The class of a tag, bits 8 and 7 of the identifier octet.
+     */
+    public enum TagClass {
+        UNIVERSAL,
+        APPLICATION,
+        CONTEXT_SPECIFIC,
+        PRIVATE
+    }
+
+    /**
+     * Receiver of the events of {@link #read(Handler)}, the reader is positioned at the event.
+     */
+    public interface Handler {
+        default void startConstructed(Asn1Reader reader) throws IOException {
+        }
+
+        default void endConstructed(Asn1Reader reader) throws IOException {
+        }
+
+        default void primitive(Asn1Reader reader) throws IOException {
+        }
+    }
+
+    private record Frame(TagClass tagClass, int tagNumber, long offset, long valueOffset, long length, long end) {
+    }
+
+    private final InputStream input;
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferLimit;
+    // offset in the input of buffer[bufferPosition]
+    private long position;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private Event event;
+    private TagClass tagClass;
+    private int tagNumber;
+    private boolean constructed;
+    private long offset;
+    private long valueOffset;
+    private long length;
+    // unread bytes of the value of the current primitive
+    private long valueRemaining;
+
+    /**
+     * Instantiates a reader of a stream, which is closed with the reader.
+     *
+     * @param input the stream
+     */
+    public Asn1Reader(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Instantiates a reader of a byte array, which is not copied.
+     *
+     * @param bytes the encoded structure
+     */
+    public Asn1Reader(byte[] bytes) {
+        this.input = null;
+        this.buffer = bytes;
+        this.bufferLimit = bytes.length;
+    }
+
+    /**
+     * Read the next event, skipping the unread value of the current primitive.
+     *
+     * @return the event, {@link Event#END_DOCUMENT} at the end of the input
+     * @throws IOException if the input can't be read or is no valid BER
+     */
+    public Event next() throws IOException {
+        skipValue();
+        Frame parent = frames.peek();
+        if (parent != null && parent.end >= 0) {
+            if (position == parent.end) {
+                return end(frames.pop());
+            }
+            if (position > parent.end) {
+                throw new IOException("Invalid BER: content overruns the constructed type at offset " + parent.offset);
+            }
+        }
+        if (!hasByte()) {
+            if (parent != null) {
+                throw new EOFException("Invalid BER: input ends inside the constructed type at offset " + parent.offset);
+            }
+            event = Event.END_DOCUMENT;
+            return event;
+        }
+        long start = position;
+        int identifier = readByte();
+        if (identifier == 0 && parent != null && parent.end < 0) {
+            if (readByte() != 0) {
+                throw new IOException("Invalid BER: end-of-contents with a length at offset " + start);
+            }
+            return end(frames.pop());
+        }
+        TagClass newTagClass = TagClass.values()[identifier >>> 6];
+        boolean newConstructed = (identifier & 0x20) != 0;
+        int newTagNumber = identifier & 0x1F;
+        if (newTagNumber == 0x1F) {
+            newTagNumber = readHighTagNumber(start);
+        }
+        long newLength = readLength(start, newConstructed);
+        if (parent != null && parent.end >= 0 && (position > parent.end || newLength > parent.end - position)) {
+            throw new IOException("Invalid BER: object at offset " + start + " overruns the constructed type at offset " + parent.offset);
+        }
+        event = newConstructed ? Event.START_CONSTRUCTED : Event.PRIMITIVE;
+        tagClass = newTagClass;
+        tagNumber = newTagNumber;
+        constructed = newConstructed;
+        offset = start;
+        valueOffset = position;
+        length = newLength;
+        if (newConstructed) {
+            if (frames.size() == MAX_DEPTH) {
+                throw new IOException("Invalid BER: nesting deeper than " + MAX_DEPTH + " at offset " + start);
+            }
+            frames.push(new Frame(tagClass, tagNumber, offset, valueOffset, length, length < 0 ? -1 : position + length));
+        } else {
+            valueRemaining = length;
+        }
+        return event;
+    }
+
+    /**
+     * Read all events of the input and push them to a handler.
+     *
+     * @param handler the handler
+     * @throws IOException if the input can't be read, is no valid BER, or the handler throws it
+     */
+    public void read(Handler handler) throws IOException {
+        for (Event e = next(); e != Event.END_DOCUMENT; e = next()) {
+            switch (e) {
+                case START_CONSTRUCTED -> handler.startConstructed(this);
+                case END_CONSTRUCTED -> handler.endConstructed(this);
+                case PRIMITIVE -> handler.primitive(this);
+                default -> throw new IllegalStateException("Unexpected event " + e);
+            }
+        }
+    }
+
+    /**
+     * The current event.
+     */
+    public Event event() {
+        return event;
+    }
+
+    /**
+     * The tag class of the current object, at {@link Event#END_CONSTRUCTED} of the ending object.
+     */
+    public TagClass tagClass() {
+        return tagClass;
+    }
+
+    /**
+     * The tag number of the current object, e.g. 0x10 for a universal SEQUENCE or 0 for {@code [0]}.
+     */
+    public int tagNumber() {
+        return tagNumber;
+    }
+
+    /**
+     * If the current object is a constructed type.
+     */
+    public boolean isConstructed() {
+        return constructed;
+    }
+
+    /**
+     * The offset of the identifier of the current object in the input.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * The offset of the value of the current object in the input.
+     */
+    public long valueOffset() {
+        return valueOffset;
+    }
+
+    /**
+     * The length of the value of the current object, -1 for indefinite length.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * The number of constructed types the reader is in, the current one included at
+     * {@link Event#START_CONSTRUCTED}.
+     */
+    public int depth() {
+        return frames.size();
+    }
+
+    /**
+     * Read the value of the current primitive.
+     *
+     * @return the value
+     * @throws IOException if the input can't be read, or the value doesn't fit into an array
+     */
+    public byte[] readValue() throws IOException {
+        requirePrimitive();
+        if (valueRemaining != length) {
+            throw new IllegalStateException("The value of the primitive at offset " + offset + " is partly read");
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Value of " + length + " bytes at offset " + offset + " is too large for an array, use valueStream()");
+        }
+        byte[] value = new byte[(int) length];
+        readFully(value, 0, value.length);
+        valueRemaining = 0;
+        return value;
+    }
+
+    /**
+     * Read the value of the current primitive as OID, see {@link Oid#decode(byte[], int, int)}.
+     *
+     * @return the OID
+     * @throws IOException if the input can't be read, or the primitive is no valid OID
+     */
+    public Oid readObjectIdentifier() throws IOException {
+        requirePrimitive();
+        if (tagClass != TagClass.UNIVERSAL || tagNumber != 0x06) {
+            throw new IOException("Invalid BER: object at offset " + offset + " is not object OID");
+        }
+        byte[] value = readValue();
+        return Oid.decode(value, 0, value.length);
+    }
+
+    /**
+     * A stream of the unread value of the current primitive, valid until the next event.
+     *
+     * @return the stream, it doesn't close the reader
+     */
+    public InputStream valueStream() {
+        requirePrimitive();
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (valueRemaining == 0) {
+                    return -1;
+                }
+                valueRemaining--;
+                return readByte();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (valueRemaining == 0) {
+                    return -1;
+                }
+                int n = readSome(b, off, (int) Math.min(len, valueRemaining));
+                valueRemaining -= n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(bufferLimit - bufferPosition, valueRemaining);
+            }
+        };
+    }
+
+    /**
+     * Skip the unread value of the current primitive, {@link #next()} does this too.
+     *
+     * @throws IOException if the input can't be read
+     */
+    public void skipValue() throws IOException {
+        if (valueRemaining > 0) {
+            skip(valueRemaining);
+            valueRemaining = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+
+    private Event end(Frame frame) {
+        event = Event.END_CONSTRUCTED;
+        tagClass = frame.tagClass;
+        tagNumber = frame.tagNumber;
+        constructed = true;
+        offset = frame.offset;
+        valueOffset = frame.valueOffset;
+        length = frame.length;
+        return event;
+    }
+
+    private void requirePrimitive() {
+        if (event != Event.PRIMITIVE) {
+            throw new IllegalStateException("Not at a primitive but at " + event);
+        }
+    }
+
+    /**
+     * Tag number of more than one octet, base 128 with bit 8 set on all but the last.
+     */
+    private int readHighTagNumber(long start) throws IOException {
+        int number = 0;
+        int b;
+        do {
+            b = readByte();
+            if (number == 0 && b == 0x80 || number > Integer.MAX_VALUE >>> 7) {
+                throw new IOException("Invalid BER: tag number not supported at offset " + start);
+            }
+            number = number << 7 | b & 0x7F;
+        } while ((b & 0x80) != 0);
+        return number;
+    }
+
+    /**
+     * Length octets, short or long form of up to 8 octets, or -1 for indefinite length.
+     */
+    private long readLength(long start, boolean constructedType) throws IOException {
+        int first = readByte();
+        if ((first & 0x80) == 0) {
+            return first;
+        }
+        int num = first & 0x7F;
+        if (num == 0) {
+            if (!constructedType) {
+                throw new IOException("Invalid BER: indefinite length of a primitive at offset " + start);
+            }
+            return -1;
+        }
+        if (num > 8) {
+            throw new IOException("Invalid BER: length field too big (" + num + " octets) at offset " + start);
+        }
+        long value = 0;
+        for (int i = 0; i < num; i++) {
+            value = value << 8 | readByte();
+        }
+        if (value < 0) {
+            throw new IOException("Invalid BER: length too big at offset " + start);
+        }
+        return value;
+    }
+
+    private boolean hasByte() throws IOException {
+        return bufferPosition < bufferLimit || fill();
+    }
+
+    private int readByte() throws IOException {
+        if (!hasByte()) {
+            throw new EOFException("Invalid BER: input truncated at offset " + position);
+        }
+        position++;
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    private int readSome(byte[] b, int off, int len) throws IOException {
+        if (!hasByte()) {
+            throw new EOFException("Invalid BER: input truncated at offset " + position);
+        }
+        int n = Math.min(len, bufferLimit - bufferPosition);
+        System.arraycopy(buffer, bufferPosition, b, off, n);
+        bufferPosition += n;
+        position += n;
+        return n;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = readSome(b, off, len);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            if (!hasByte()) {
+                throw new EOFException("Invalid BER: input truncated at offset " + position);
+            }
+            int skipped = (int) Math.min(n, bufferLimit - bufferPosition);
+            bufferPosition += skipped;
+            position += skipped;
+            n -= skipped;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (input == null) {
+            return false;
+        }
+        int n = input.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        bufferPosition = 0;
+        bufferLimit = n;
+        return true;
+    }
+}
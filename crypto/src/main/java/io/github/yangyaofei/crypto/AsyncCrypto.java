@@ -0,0 +1,291 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.SecretKey;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade of the CPU bound crypto operations, for callers on event loops like Netty or gRPC which must not
+ * block.
+ * <p>
+ * The operations run on a fixed pool of daemon threads, one per core by default, with a bounded queue in front. A
+ * saturated pool doesn't block the caller: the returned future fails at once with a
+ * {@link RejectedExecutionException}, and {@link #isSaturated()} tells callers to stop reading before that happens.
+ * The futures complete on the worker threads, continue with the {@code *Async} methods of {@link CompletableFuture}
+ * and the event loop as executor to get back to it. A future cancelled while queued doesn't run.
+ * <p>
+ * The pool threads are platform threads, virtual threads don't help CPU bound work and need Java 21.
+ */
+@SuppressWarnings("unused")
+public final class AsyncCrypto implements Closeable {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    /**
+     * Facade metrics.
+     *
+     * @param submitted     the number of accepted operations
+     * @param rejected      the number of operations rejected, because the queue was full
+     * @param completed     the number of operations completed normally
+     * @param failed        the number of operations completed exceptionally
+     * @param cancelled     the number of operations cancelled while queued, they didn't run
+     * @param queueDepth    the number of operations waiting now
+     * @param active        the number of operations running now
+     * @param meanQueueTime the mean time an operation waited for a thread
+     * @param maxQueueTime  the max time an operation waited for a thread
+     * @param meanRunTime   the mean time an operation ran, of the operations which ran
+     * @param maxRunTime    the max time an operation ran
+     */
+    public record Metrics(
+            long submitted,
+            long rejected,
+            long completed,
+            long failed,
+            long cancelled,
+            int queueDepth,
+            int active,
+            Duration meanQueueTime,
+            Duration maxQueueTime,
+            Duration meanRunTime,
+            Duration maxRunTime
+    ) {
+    }
+
+    /**
+     * Instantiates a new facade with a thread per core and a queue of 64 operations per thread.
+     */
+    public AsyncCrypto() {
+        this(Runtime.getRuntime().availableProcessors(), 64 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiates a new facade.
+     *
+     * @param threads       the number of worker threads
+     * @param queueCapacity the number of operations which may wait for a thread, more are rejected
+     */
+    public AsyncCrypto(int threads, int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "async-crypto-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Run an operation on the pool.
+     *
+     * @param task the operation
+     * @param <T>  the type of the result
+     * @return the future of the result, failed with a {@link RejectedExecutionException} if the pool is saturated
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(task, future, queuedAt));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(e);
+            return future;
+        }
+        submitted.increment();
+        return future;
+    }
+
+    /**
+     * Encrypt bytes, see {@link CryptoUtils#encrypt(byte[], SecretKey)}.
+     *
+     * @param data the data
+     * @param key  the key
+     * @return the future of the sealed data
+     */
+    public CompletableFuture<byte[]> encrypt(byte[] data, SecretKey key) {
+        return submit(() -> CryptoUtils.encrypt(data, key));
+    }
+
+    /**
+     * Decrypt bytes, see {@link CryptoUtils#decrypt(byte[], SecretKey)}.
+     *
+     * @param sealed the sealed data
+     * @param key    the key
+     * @return the future of the data
+     */
+    public CompletableFuture<byte[]> decrypt(byte[] sealed, SecretKey key) {
+        return submit(() -> CryptoUtils.decrypt(sealed, key));
+    }
+
+    /**
+     * Derive a key from a password, see {@link CryptoUtils#deriveKey(char[], byte[], AeadAlgorithm)}.
+     *
+     * @param password  the password
+     * @param salt      the salt
+     * @param algorithm the algorithm of the key
+     * @return the future of the key
+     */
+    public CompletableFuture<SecretKey> deriveKey(char[] password, byte[] salt, AeadAlgorithm algorithm) {
+        return submit(() -> CryptoUtils.deriveKey(password, salt, algorithm));
+    }
+
+    /**
+     * Generate a key pair, see {@link CertUtils#generateKeyPair(KeyPairAlgorithm)}.
+     *
+     * @param algorithm the algorithm
+     * @return the future of the key pair
+     */
+    public CompletableFuture<KeyPair> generateKeyPair(KeyPairAlgorithm algorithm) {
+        return submit(() -> CertUtils.generateKeyPair(algorithm));
+    }
+
+    /**
+     * Issue a certificate, see {@link CertificateIssuer#issue(CertificateIssuer.CertRequest)}.
+     *
+     * @param issuer  the issuer
+     * @param request the request
+     * @return the future of the certificate
+     */
+    public CompletableFuture<X509Certificate> issue(CertificateIssuer issuer, CertificateIssuer.CertRequest request) {
+        return submit(() -> issuer.issue(request));
+    }
+
+    /**
+     * Parse a certificate, see {@link CertificateCache#parse(byte[])}.
+     *
+     * @param der the DER encoding of the certificate
+     * @return the future of the certificate
+     */
+    public CompletableFuture<X509Certificate> readX509Certificate(byte[] der) {
+        return submit(() -> CertificateCache.parse(der));
+    }
+
+    /**
+     * Read a private key, see {@link PemUtils#readPrivateKey(Path, Supplier)}.
+     *
+     * @param keyPath          the path for the key file
+     * @param passwordSupplier A password supplier for the potentially encrypted (password protected) key
+     * @return the future of the private key
+     */
+    public CompletableFuture<PrivateKey> readPrivateKey(Path keyPath, Supplier<char[]> passwordSupplier) {
+        return submit(() -> PemUtils.readPrivateKey(keyPath, passwordSupplier));
+    }
+
+    /**
+     * Validate a certificate chain, see {@link ChainValidator#validate(List)}.
+     *
+     * @param validator the validator
+     * @param chain     the chain, the leaf first
+     * @return the future of the path from the leaf to the trust anchor
+     */
+    public CompletableFuture<List<X509Certificate>> validate(ChainValidator validator, List<X509Certificate> chain) {
+        return submit(() -> validator.validate(chain));
+    }
+
+    /**
+     * If the queue is at least three quarters full, callers should stop taking work until it drains.
+     *
+     * @return if saturated
+     */
+    public boolean isSaturated() {
+        return executor.getQueue().size() >= queueCapacity - queueCapacity / 4;
+    }
+
+    /**
+     * Get the metrics of the facade.
+     *
+     * @return a snapshot of the metrics
+     */
+    public Metrics metrics() {
+        long completed = this.completed.sum();
+        long failed = this.failed.sum();
+        long cancelled = this.cancelled.sum();
+        long ran = completed + failed;
+        long dequeued = ran + cancelled;
+        return new Metrics(
+                submitted.sum(),
+                rejected.sum(),
+                completed,
+                failed,
+                cancelled,
+                executor.getQueue().size(),
+                executor.getActiveCount(),
+                Duration.ofNanos(dequeued == 0 ? 0 : queueNanos.sum() / dequeued),
+                Duration.ofNanos(maxQueueNanos.get()),
+                Duration.ofNanos(ran == 0 ? 0 : runNanos.sum() / ran),
+                Duration.ofNanos(maxRunNanos.get())
+        );
+    }
+
+    /**
+     * Stop taking operations, the queued ones still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> future, long queuedAt) {
+        long start = System.nanoTime();
+        long queued = start - queuedAt;
+        queueNanos.add(queued);
+        maxQueueNanos.accumulateAndGet(queued, Math::max);
+        if (future.isDone()) {
+            // cancelled while queued
+            cancelled.increment();
+            return;
+        }
+        T result;
+        try {
+            result = task.call();
+        } catch (Throwable e) {
+            recordRun(start);
+            failed.increment();
+            future.completeExceptionally(e);
+            return;
+        }
+        recordRun(start);
+        completed.increment();
+        future.complete(result);
+    }
+
+    private void recordRun(long start) {
+        long nanos = System.nanoTime() - start;
+        runNanos.add(nanos);
+        maxRunNanos.accumulateAndGet(nanos, Math::max);
+    }
+}
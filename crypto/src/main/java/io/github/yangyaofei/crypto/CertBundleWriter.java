@@ -0,0 +1,293 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcePEMEncryptorBuilder;
+import org.bouncycastle.util.io.pem.PemObject;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writer of certificate bundles as ZIP archives: the certificate, the private key, optionally encrypted, and the CA
+ * certificate, as {@link CertUtils#saveCertAndKey} writes them.
+ * <p>
+ * The CA certificate is read once and kept in memory. {@link #writeAll} writes many bundles into one archive, a
+ * directory per bundle and the CA once at the top, and {@link #writeEach} writes an archive per bundle. Both encode the
+ * bundles in parallel, at most a few per thread ahead of the writing, so the bundles are consumed only as fast as the
+ * output takes them. With {@code stored} the entries are written uncompressed, PEM compresses poorly anyway.
+ */
+@SuppressWarnings("unused")
+public final class CertBundleWriter {
+    private static final String CERT_ENTRY = "client.crt";
+    private static final String KEY_ENTRY = "client.key";
+    private static final String CA_ENTRY = "ca.pem";
+
+    private final byte[] caPem;
+    private final long caCrc;
+    private final boolean stored;
+    private final int depth;
+
+    /**
+     * A bundle to write.
+     *
+     * @param name        the name of the directory of the bundle in an archive of many bundles
+     * @param certificate the certificate
+     * @param privateKey  the private key
+     * @param password    the password to encrypt the private key, null to write it unencrypted
+     */
+    public record Bundle(String name, X509Certificate certificate, PrivateKey privateKey, @Nullable char[] password) {
+    }
+
+    /**
+     * Target of {@link #writeEach}, opens the stream of the archive of a bundle.
+     */
+    @FunctionalInterface
+    public interface ArchiveTarget {
+        OutputStream open(Bundle bundle) throws IOException;
+    }
+
+    private record Encoded(String name, byte[] certificate, long certificateCrc, byte[] key, long keyCrc) {
+    }
+
+    /**
+     * Instantiates a new writer.
+     *
+     * @param caPem  the CA certificate in PEM
+     * @param stored if the entries are written uncompressed
+     */
+    public CertBundleWriter(byte[] caPem, boolean stored) {
+        this.caPem = caPem.clone();
+        this.caCrc = crc(this.caPem);
+        this.stored = stored;
+        this.depth = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Instantiates a new writer with the CA certificate of a file.
+     *
+     * @param caPath the path to the CA certificate file
+     * @param stored if the entries are written uncompressed
+     * @return the writer
+     * @throws IOException if the file can't be read
+     */
+    public static CertBundleWriter of(Path caPath, boolean stored) throws IOException {
+        return new CertBundleWriter(Files.readAllBytes(caPath), stored);
+    }
+
+    /**
+     * Write one bundle as archive, with the entries {@code client.crt}, {@code client.key} and {@code ca.pem}.
+     *
+     * @param bundle the bundle, its name is not used
+     * @param out    the output, it's not closed
+     * @throws IOException if the output can't be written
+     */
+    public void write(Bundle bundle, OutputStream out) throws IOException {
+        Encoded encoded = encode(bundle);
+        // closed to release the native memory of its deflater, without closing the output
+        try (ZipOutputStream zip = new ZipOutputStream(new UnclosedOutputStream(out), StandardCharsets.UTF_8)) {
+            putEntry(zip, CERT_ENTRY, encoded.certificate, encoded.certificateCrc);
+            putEntry(zip, KEY_ENTRY, encoded.key, encoded.keyCrc);
+            putEntry(zip, CA_ENTRY, caPem, caCrc);
+        }
+    }
+
+    /**
+     * Write many bundles into one archive, encoded in parallel on the common pool.
+     *
+     * @param bundles the bundles, with distinct names
+     * @param out     the output, it's not closed
+     * @throws IOException if the output can't be written
+     * @see #writeAll(Iterator, OutputStream, Executor)
+     */
+    public void writeAll(Iterator<Bundle> bundles, OutputStream out) throws IOException {
+        writeAll(bundles, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write many bundles into one archive, {@code ca.pem} and for every bundle {@code <name>/client.crt} and
+     * {@code <name>/client.key}, in the order of the bundles.
+     *
+     * @param bundles  the bundles, with distinct names
+     * @param out      the output, it's not closed
+     * @param executor the executor for encoding the bundles
+     * @throws IOException if the output can't be written
+     */
+    public void writeAll(Iterator<Bundle> bundles, OutputStream out, Executor executor) throws IOException {
+        Deque<CompletableFuture<Encoded>> window = new ArrayDeque<>(depth);
+        // the archive headers are small writes, closing flushes the buffer and releases the deflater but not the output
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(new UnclosedOutputStream(out), 64 * 1024), StandardCharsets.UTF_8
+        )) {
+            putEntry(zip, CA_ENTRY, caPem, caCrc);
+            while (bundles.hasNext()) {
+                if (window.size() == depth) {
+                    putBundle(zip, join(window.poll()));
+                }
+                Bundle bundle = bundles.next();
+                window.add(CompletableFuture.supplyAsync(() -> encodeUnchecked(bundle), executor));
+            }
+            while (!window.isEmpty()) {
+                putBundle(zip, join(window.poll()));
+            }
+        } finally {
+            window.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Write many bundles into one archive to a channel, see {@link #writeAll(Iterator, OutputStream, Executor)}.
+     *
+     * @param bundles  the bundles, with distinct names
+     * @param channel  the output, it's not closed
+     * @param executor the executor for encoding the bundles
+     * @throws IOException if the output can't be written
+     */
+    public void writeAll(Iterator<Bundle> bundles, WritableByteChannel channel, Executor executor) throws IOException {
+        // a blocking channel blocks the writes, which in turn hold back the encoding
+        writeAll(bundles, Channels.newOutputStream(channel), executor);
+    }
+
+    /**
+     * Write an archive per bundle, as {@link #write(Bundle, OutputStream)}, in parallel.
+     *
+     * @param bundles  the bundles
+     * @param target   opens the output of the archive of a bundle, it's closed after the archive is written
+     * @param executor the executor for encoding and writing the archives
+     * @throws IOException if an output can't be opened or written
+     */
+    public void writeEach(Iterable<Bundle> bundles, ArchiveTarget target, Executor executor) throws IOException {
+        Deque<CompletableFuture<Void>> window = new ArrayDeque<>(depth);
+        try {
+            for (Bundle bundle : bundles) {
+                if (window.size() == depth) {
+                    join(window.poll());
+                }
+                window.add(CompletableFuture.runAsync(() -> {
+                    try (OutputStream out = target.open(bundle)) {
+                        write(bundle, out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            List<CompletableFuture<Void>> rest = new ArrayList<>(window);
+            window.clear();
+            for (CompletableFuture<Void> future : rest) {
+                join(future);
+            }
+        } finally {
+            window.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private void putBundle(ZipOutputStream zip, Encoded encoded) throws IOException {
+        putEntry(zip, encoded.name + "/" + CERT_ENTRY, encoded.certificate, encoded.certificateCrc);
+        putEntry(zip, encoded.name + "/" + KEY_ENTRY, encoded.key, encoded.keyCrc);
+    }
+
+    private void putEntry(ZipOutputStream zip, String name, byte[] data, long crc) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc);
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static Encoded encodeUnchecked(Bundle bundle) {
+        try {
+            return encode(bundle);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Encoded encode(Bundle bundle) throws IOException {
+        ByteArrayOutputStream certificate = new ByteArrayOutputStream(2048);
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(new OutputStreamWriter(certificate, StandardCharsets.UTF_8))) {
+            pemWriter.writeObject(bundle.certificate());
+        }
+        ByteArrayOutputStream key = new ByteArrayOutputStream(4096);
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(new OutputStreamWriter(key, StandardCharsets.UTF_8))) {
+            PemObject pemObject = new PemObject("PRIVATE KEY", bundle.privateKey().getEncoded());
+            if (bundle.password() != null) {
+                pemWriter.writeObject(
+                        pemObject,
+                        new JcePEMEncryptorBuilder("AES-128-CBC")
+                                .setProvider(CertUtils.BC_PROV)
+                                .build(bundle.password())
+                );
+            } else {
+                pemWriter.writeObject(pemObject);
+            }
+        }
+        byte[] certificateBytes = certificate.toByteArray();
+        byte[] keyBytes = key.toByteArray();
+        return new Encoded(bundle.name(), certificateBytes, crc(certificateBytes), keyBytes, crc(keyBytes));
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * An output stream whose close only flushes, the underlying stream stays open.
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+        private UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package io.github.yangyaofei.crypto;
 
-import org.apache.commons.io.IOUtils;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.BasicConstraints;
@@ -12,39 +11,35 @@ import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
-import org.bouncycastle.openssl.jcajce.JcePEMEncryptorBuilder;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.util.io.pem.PemObject;
 
 import javax.annotation.Nullable;
 import javax.security.auth.x500.X500Principal;
 import java.io.*;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.*;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.EdECKey;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.List;
 
 /**
  * parse and generate RSA Cert
  */
 @SuppressWarnings("unused")
 public class CertUtils {
-    private static final BouncyCastleProvider BC_PROV = new BouncyCastleProvider();
+    static final BouncyCastleProvider BC_PROV = new BouncyCastleProvider();
     private static final int SERIAL_BIT_LENGTH = 20 * 8;
 
-
     /**
-     * Generate RAS key pair.
+     * Generate RAS key pair, see {@link KeyPairPool} to take pre-generated pairs instead.
      *
      * @return the key pair
      */
@@ -58,9 +53,36 @@ public class CertUtils {
         }
     }
 
+    /**
+     * Generate a key pair of an algorithm, Ed25519 and EC P-256 sign far cheaper than RSA.
+     *
+     * @param algorithm the algorithm
+     * @return the key pair
+     */
+    public static KeyPair generateKeyPair(KeyPairAlgorithm algorithm) {
+        return algorithm.generate();
+    }
+
+    /**
+     * Generate an Ed25519 key pair.
+     *
+     * @return the key pair
+     */
+    public static KeyPair generateEd25519Pair() {
+        return KeyPairAlgorithm.ED25519.generate();
+    }
 
     /**
-     * 生成签名证书
+     * Generate an EC key pair on the curve P-256 (secp256r1).
+     *
+     * @return the key pair
+     */
+    public static KeyPair generateEcP256Pair() {
+        return KeyPairAlgorithm.EC_P256.generate();
+    }
+
+    /**
+     * 生成签名证书, 批量签发见 {@link CertificateIssuer}
      *
      * @param principal          证书主体
      * @param subjectAltNames    扩展主体名称
@@ -127,7 +149,7 @@ public class CertUtils {
 
         //创建签名操作员
         ContentSigner signer = new JcaContentSignerBuilder(
-                signatureAlgorithm == null ? CertUtils.getDefaultSignatureAlgorithm(caPrivateKey) : signatureAlgorithm
+                signatureAlgorithm == null ? CertUtils.getDefaultSignatureAlgorithm(signingKey) : signatureAlgorithm
         )
                 .setProvider(CertUtils.BC_PROV)
                 .build(signingKey);
@@ -151,25 +173,31 @@ public class CertUtils {
      * @return the serial
      */
     public static BigInteger getSerial() {
-        SecureRandom random = new SecureRandom();
-        return new BigInteger(CertUtils.SERIAL_BIT_LENGTH, random);
+        return new BigInteger(CertUtils.SERIAL_BIT_LENGTH, RandomSource.current());
     }
 
-    private static String getDefaultSignatureAlgorithm(PrivateKey key) {
+    static String getDefaultSignatureAlgorithm(PrivateKey key) {
         return switch (key.getAlgorithm()) {
             case "RSA" -> "SHA256withRSA";
             case "DSA" -> "SHA256withDSA";
-            case "EC" -> "SHA256withECDSA";
+            // the digest matching the curve size, as TLS 1.3 pairs them
+            case "EC" -> key instanceof ECKey ecKey && ecKey.getParams().getCurve().getField().getFieldSize() > 256
+                    ? "SHA384withECDSA"
+                    : "SHA256withECDSA";
+            // the JDK names EdDSA keys EdDSA, Bouncy Castle by their curve
+            case "EdDSA" -> key instanceof EdECKey edKey ? edKey.getParams().getName() : "Ed25519";
+            case "Ed25519", "Ed448" -> key.getAlgorithm();
             default -> throw new IllegalArgumentException(
                     "Unsupported algorithm : "
                             + key.getAlgorithm()
-                            + " for signature, allowed values for private key algorithm are [RSA, DSA, EC]"
+                            + " for signature, allowed values for private key algorithm are [RSA, DSA, EC, Ed25519, Ed448]"
             );
         };
     }
 
     /**
-     * Saves the certificate and private key to an output stream in a zip file format.
+     * Saves the certificate and private key to an output stream in a zip file format, see {@link CertBundleWriter}
+     * to write many bundles with the CA certificate read once.
      *
      * @param  outputStream   the output stream to write the zip file to
      * @param  certificate     the X509 certificate to save
@@ -184,32 +212,11 @@ public class CertUtils {
             @Nullable String password,
             String caPath
     ) {
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
-             JcaPEMWriter pemWriter = new JcaPEMWriter(new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8));
-             FileInputStream caInputStream = new FileInputStream(caPath)
-        ) {
-            zipOutputStream.putNextEntry(new ZipEntry("client.crt"));
-            pemWriter.writeObject(certificate);
-            pemWriter.flush();
-            zipOutputStream.closeEntry();
-            PemObject pemObject = new PemObject("PRIVATE KEY", privateKey.getEncoded());
-
-            zipOutputStream.putNextEntry(new ZipEntry("client.key"));
-            if (password != null) {
-                pemWriter.writeObject(
-                        pemObject,
-                        new JcePEMEncryptorBuilder("AES-128-CBC")
-                                .setProvider(CertUtils.BC_PROV)
-                                .build(password.toCharArray())
-                );
-            } else {
-                pemWriter.writeObject(pemObject);
-            }
-            pemWriter.flush();
-            zipOutputStream.closeEntry();
-            zipOutputStream.putNextEntry(new ZipEntry("ca.pem"));
-            IOUtils.copy(caInputStream, zipOutputStream);
-            zipOutputStream.closeEntry();
+        try (outputStream) {
+            CertBundleWriter.of(Path.of(caPath), false).write(
+                    new CertBundleWriter.Bundle("client", certificate, privateKey, password == null ? null : password.toCharArray()),
+                    outputStream
+            );
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -223,7 +230,19 @@ public class CertUtils {
      * @throws Exception the exception
      */
     public static X509Certificate readX509Certificate(InputStream input) throws Exception {
-        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        return (X509Certificate) certFactory.generateCertificate(input);
+        return (X509Certificate) CertificateCache.certificateFactory().generateCertificate(input);
+    }
+
+    /**
+     * Read all x 509 certificates of a PEM bundle, see {@link PemBundleReader} for keys, CRLs and parallel parsing.
+     *
+     * @param input the input, a PEM bundle
+     * @return the x 509 certificates in order
+     * @throws Exception the exception
+     */
+    public static List<X509Certificate> readX509Certificates(InputStream input) throws Exception {
+        try (PemBundleReader reader = new PemBundleReader(input, "input")) {
+            return reader.readCertificates();
+        }
     }
 }
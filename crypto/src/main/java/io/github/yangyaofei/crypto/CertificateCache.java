@@ -0,0 +1,142 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of parsed {@link X509Certificate}s keyed by the SHA-256 of their DER encoding.
+ * <p>
+ * Clients present the same certificates on every connect, a hit costs a SHA-256 of the encoding instead of a parse.
+ * The {@link CertificateFactory} is kept per thread, {@link CertificateFactory#getInstance(String)} is a provider
+ * lookup. When full, the least recently used certificate is dropped.
+ */
+@SuppressWarnings("unused")
+public final class CertificateCache {
+    private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORIES = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException("X.509 is not available", e);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final int maximumSize;
+    private final LinkedHashMap<Fingerprint, X509Certificate> certificates;
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumSize the maximum number of certificates
+     */
+    public CertificateCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.certificates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, X509Certificate> eldest) {
+                return size() > CertificateCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Get the certificate of a DER encoding, parse and cache it if missing.
+     *
+     * @param der the DER encoding of the certificate
+     * @return the certificate
+     * @throws CertificateException if the encoding is not a certificate
+     */
+    public X509Certificate get(byte[] der) throws CertificateException {
+        Fingerprint fingerprint = fingerprint(der);
+        synchronized (certificates) {
+            X509Certificate certificate = certificates.get(fingerprint);
+            if (certificate != null) {
+                return certificate;
+            }
+        }
+        // parsed outside the lock, two threads missing on the same certificate at once both parse it
+        X509Certificate certificate = parse(der);
+        synchronized (certificates) {
+            certificates.put(fingerprint, certificate);
+        }
+        return certificate;
+    }
+
+    /**
+     * Drop all certificates.
+     */
+    public void invalidateAll() {
+        synchronized (certificates) {
+            certificates.clear();
+        }
+    }
+
+    /**
+     * The number of cached certificates.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (certificates) {
+            return certificates.size();
+        }
+    }
+
+    /**
+     * Parse a certificate with the factory of this thread, without caching.
+     *
+     * @param der the DER encoding of the certificate
+     * @return the certificate
+     * @throws CertificateException if the encoding is not a certificate
+     */
+    public static X509Certificate parse(byte[] der) throws CertificateException {
+        return (X509Certificate) certificateFactory().generateCertificate(new ByteArrayInputStream(der));
+    }
+
+    static CertificateFactory certificateFactory() {
+        return CERTIFICATE_FACTORIES.get();
+    }
+
+    static Fingerprint fingerprint(byte[] der) {
+        return new Fingerprint(DIGESTS.get().digest(der));
+    }
+
+    static Fingerprint fingerprint(X509Certificate certificate) throws CertificateEncodingException {
+        // getEncoded is a copy of the encoding kept by the certificate, no encoding work
+        return fingerprint(certificate.getEncoded());
+    }
+
+    record Fingerprint(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint other && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return "Fingerprint";
+        }
+    }
+}
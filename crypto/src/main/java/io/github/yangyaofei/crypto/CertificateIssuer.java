@@ -0,0 +1,210 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.annotation.Nullable;
+import javax.security.auth.x500.X500Principal;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Issuer of end entity certificates signed by one CA, for issuing many certificates, e.g. short-lived mTLS client
+ * certificates.
+ * <p>
+ * {@link CertUtils#generateSignedCertificate} sets up everything per certificate, an issuer does it once: the issuer
+ * name and authority key identifier of the CA are computed in the constructor, the {@link ContentSigner} and the
+ * {@link JcaX509ExtensionUtils} for the subject key identifier are created once per thread and reused, as they are
+ * not thread safe. An issuer is thread safe, {@link #issueAll(List)} signs a batch on all cores.
+ */
+@SuppressWarnings("unused")
+public final class CertificateIssuer {
+    private static final BasicConstraints END_ENTITY = new BasicConstraints(false);
+
+    private final PrivateKey caPrivateKey;
+    private final String signatureAlgorithm;
+    private final X500Name issuer;
+    private final AuthorityKeyIdentifier authorityKeyIdentifier;
+    private final JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * A certificate to issue.
+     *
+     * @param subject         the subject
+     * @param subjectAltNames the subject alternative names, null for none
+     * @param publicKey       the public key of the subject
+     * @param validity        the validity from now on
+     */
+    public record CertRequest(X500Principal subject, @Nullable GeneralNames subjectAltNames, PublicKey publicKey, Duration validity) {
+        public CertRequest {
+            Objects.requireNonNull(subject, "subject");
+            Objects.requireNonNull(publicKey, "publicKey");
+            if (validity.isNegative() || validity.isZero()) {
+                throw new IllegalArgumentException("validity must be positive: " + validity);
+            }
+        }
+    }
+
+    private record Worker(JcaX509ExtensionUtils extUtils, ContentSigner signer) {
+    }
+
+    /**
+     * Instantiates a new issuer with the default signature algorithm of the CA key, see
+     * {@link CertUtils#generateSignedCertificate}.
+     *
+     * @param caPrivateKey the ca private key
+     * @param caCert       the ca certificate
+     * @throws NoSuchAlgorithmException  the no such algorithm exception
+     * @throws OperatorCreationException if the signer can't be created
+     */
+    public CertificateIssuer(PrivateKey caPrivateKey, X509Certificate caCert) throws NoSuchAlgorithmException,
+            OperatorCreationException {
+        this(caPrivateKey, caCert, null);
+    }
+
+    /**
+     * Instantiates a new issuer.
+     *
+     * @param caPrivateKey       the ca private key
+     * @param caCert             the ca certificate
+     * @param signatureAlgorithm the signature algorithm, null for the default of the CA key
+     * @throws NoSuchAlgorithmException  the no such algorithm exception
+     * @throws OperatorCreationException if the signer can't be created
+     */
+    public CertificateIssuer(PrivateKey caPrivateKey, X509Certificate caCert, @Nullable String signatureAlgorithm)
+            throws NoSuchAlgorithmException, OperatorCreationException {
+        if (caCert.getBasicConstraints() < 0) {
+            throw new IllegalArgumentException("ca certificate is not a CA!");
+        }
+        this.caPrivateKey = caPrivateKey;
+        this.signatureAlgorithm = signatureAlgorithm == null ? CertUtils.getDefaultSignatureAlgorithm(caPrivateKey) : signatureAlgorithm;
+        // the issuer of the certificates is the subject of the CA
+        this.issuer = X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded());
+        Worker first = newWorker();
+        this.authorityKeyIdentifier = first.extUtils.createAuthorityKeyIdentifier(caCert.getPublicKey());
+        this.workers = ThreadLocal.withInitial(() -> {
+            try {
+                return newWorker();
+            } catch (NoSuchAlgorithmException | OperatorCreationException e) {
+                // worked for the first worker already
+                throw new IllegalStateException(e);
+            }
+        });
+        this.workers.set(first);
+    }
+
+    /**
+     * Issue a certificate.
+     *
+     * @param request the certificate to issue
+     * @return the signed certificate
+     * @throws CertificateException if the certificate can't be built
+     */
+    public X509Certificate issue(CertRequest request) throws CertificateException {
+        Instant notBefore = Instant.now();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                issuer,
+                CertUtils.getSerial(),
+                Date.from(notBefore),
+                Date.from(notBefore.plus(request.validity())),
+                X500Name.getInstance(request.subject().getEncoded()),
+                request.publicKey()
+        );
+        Worker worker = workers.get();
+        try {
+            builder.addExtension(Extension.subjectKeyIdentifier, false, worker.extUtils.createSubjectKeyIdentifier(request.publicKey()));
+            builder.addExtension(Extension.authorityKeyIdentifier, false, authorityKeyIdentifier);
+            if (request.subjectAltNames() != null) {
+                builder.addExtension(Extension.subjectAlternativeName, false, request.subjectAltNames());
+            }
+            builder.addExtension(Extension.basicConstraints, false, END_ENTITY);
+        } catch (CertIOException e) {
+            throw new CertificateException("Can't add the extensions of " + request.subject(), e);
+        }
+        return converter.getCertificate(builder.build(worker.signer));
+    }
+
+    /**
+     * Issue certificates in parallel on the common pool.
+     *
+     * @param requests the certificates to issue
+     * @return the signed certificates, in the order of the requests
+     * @throws CertificateException if a certificate can't be built
+     */
+    public List<X509Certificate> issueAll(List<CertRequest> requests) throws CertificateException {
+        return issueAll(requests, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Issue certificates in parallel.
+     *
+     * @param requests    the certificates to issue
+     * @param executor    the executor for signing
+     * @param parallelism the number of tasks the requests are split into, e.g. the threads of {@code executor}
+     * @return the signed certificates, in the order of the requests
+     * @throws CertificateException if a certificate can't be built
+     */
+    public List<X509Certificate> issueAll(List<CertRequest> requests, Executor executor, int parallelism) throws CertificateException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        X509Certificate[] certificates = new X509Certificate[requests.size()];
+        // one contiguous chunk per task, so a task reuses the signer of its thread for all its certificates
+        int tasks = Math.min(parallelism, requests.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            int from = (int) ((long) requests.size() * t / tasks);
+            int to = (int) ((long) requests.size() * (t + 1) / tasks);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    try {
+                        certificates[i] = issue(requests.get(i));
+                    } catch (CertificateException e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CertificateException certificateException) {
+                throw certificateException;
+            }
+            throw e;
+        }
+        return Arrays.asList(certificates);
+    }
+
+    private Worker newWorker() throws NoSuchAlgorithmException, OperatorCreationException {
+        ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm)
+                .setProvider(CertUtils.BC_PROV)
+                .build(caPrivateKey);
+        return new Worker(new JcaX509ExtensionUtils(), signer);
+    }
+}
@@ -0,0 +1,401 @@
+package io.github.yangyaofei.crypto;
+
+import io.github.yangyaofei.crypto.CertificateCache.Fingerprint;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+import javax.annotation.Nullable;
+import javax.security.auth.x500.X500Principal;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validator of client certificate chains against a fixed set of trust anchors, which remembers the chains it verified.
+ * <p>
+ * The path is built from the leaf up: the issuer of a certificate is looked up among the trust anchors by the authority
+ * key identifier, or by the issuer name if the certificate has none, then among the certificates presented with the
+ * chain. Every certificate of the path must be valid now, and every issuer below the anchor must be a CA allowed to
+ * sign certificates at its depth. Verified signatures are remembered per certificate and issuer, so chains sharing
+ * intermediates verify them once. A newly built path is then validated by the PKIX {@link CertPathValidator} of the
+ * platform without revocation checking, so critical extensions, name constraints and policies are enforced as by
+ * PKIX before the chain is remembered, and a leaf with an extended key usage must allow client authentication.
+ * <p>
+ * A verified chain is remembered by the SHA-256 of its certificates for the time to live, or until a certificate of
+ * its path expires, so a repeat handshake of the same client costs the hashes and no signature verification. The
+ * {@link RevocationChecker} is asked on every validation, cached or not, so it should be a lookup, e.g. in an index of
+ * the current CRLs. To change the trust anchors create a new validator.
+ */
+@SuppressWarnings("unused")
+public final class ChainValidator {
+    private static final int MAX_PATH_LENGTH = 16;
+    private static final int KEY_CERT_SIGN = 5;
+    private static final String CLIENT_AUTH = "1.3.6.1.5.5.7.3.2";
+    private static final String ANY_EXTENDED_KEY_USAGE = "2.5.29.37.0";
+
+    private final Map<KeyId, List<Anchor>> anchorsByKeyId = new HashMap<>();
+    private final Map<X500Principal, List<Anchor>> anchorsBySubject = new HashMap<>();
+    private final Set<Fingerprint> anchorFingerprints = new HashSet<>();
+    private final RevocationChecker revocationChecker;
+    private final long timeToLiveNanos;
+    private final int maximumSize;
+    private final CertificateCache certificates;
+    private final LinkedHashMap<Fingerprint, VerifiedChain> chains;
+    // verified signatures, keyed by the fingerprints of the certificate and its issuer
+    private final LinkedHashMap<Fingerprint, Boolean> signatures;
+
+    /**
+     * Check a certificate of a verified path for revocation.
+     */
+    @FunctionalInterface
+    public interface RevocationChecker {
+        /**
+         * Checks nothing.
+         */
+        RevocationChecker NONE = (certificate, issuer) -> {
+        };
+
+        /**
+         * Check a certificate.
+         *
+         * @param certificate the certificate
+         * @param issuer      its issuer in the path
+         * @throws CertificateException if the certificate is revoked
+         */
+        void check(X509Certificate certificate, X509Certificate issuer) throws CertificateException;
+    }
+
+    private record Anchor(X509Certificate certificate, Fingerprint fingerprint) {
+    }
+
+    private record VerifiedChain(List<X509Certificate> path, long verifiedAt, long notBefore, long notAfter) {
+    }
+
+    private record KeyId(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyId other && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+
+    /**
+     * Instantiates a new validator, which remembers 1024 chains for 5 minutes and checks no revocation.
+     *
+     * @param anchors the trust anchors
+     * @throws CertificateException if an anchor can't be encoded
+     */
+    public ChainValidator(Collection<X509Certificate> anchors) throws CertificateException {
+        this(anchors, Duration.ofMinutes(5), 1024, RevocationChecker.NONE);
+    }
+
+    /**
+     * Instantiates a new validator.
+     *
+     * @param anchors           the trust anchors
+     * @param timeToLive        the time a verified chain is remembered
+     * @param maximumSize       the maximum number of remembered chains, and of verified signatures
+     * @param revocationChecker asked for every certificate of the path but the anchor on every validation
+     * @throws CertificateException if an anchor can't be encoded
+     */
+    public ChainValidator(
+            Collection<X509Certificate> anchors,
+            Duration timeToLive,
+            int maximumSize,
+            RevocationChecker revocationChecker
+    ) throws CertificateException {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+        }
+        for (X509Certificate certificate : anchors) {
+            Anchor anchor = new Anchor(certificate, CertificateCache.fingerprint(certificate));
+            if (!anchorFingerprints.add(anchor.fingerprint)) {
+                continue;
+            }
+            byte[] keyId = keyIdentifier(certificate, false);
+            if (keyId != null) {
+                anchorsByKeyId.computeIfAbsent(new KeyId(keyId), k -> new ArrayList<>(1)).add(anchor);
+            }
+            anchorsBySubject.computeIfAbsent(certificate.getSubjectX500Principal(), k -> new ArrayList<>(1)).add(anchor);
+        }
+        this.revocationChecker = revocationChecker;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.maximumSize = maximumSize;
+        this.certificates = new CertificateCache(maximumSize);
+        this.chains = newLruMap(maximumSize);
+        this.signatures = newLruMap(maximumSize);
+    }
+
+    /**
+     * Validate a chain of DER encoded certificates, parsed through a {@link CertificateCache}.
+     *
+     * @param chain the DER encodings of the chain, the leaf first
+     * @return the path from the leaf to the trust anchor
+     * @throws CertificateException if the chain can't be parsed, or is not valid
+     * @see #validate(List)
+     */
+    public List<X509Certificate> validateEncoded(List<byte[]> chain) throws CertificateException {
+        List<X509Certificate> parsed = new ArrayList<>(chain.size());
+        for (byte[] der : chain) {
+            parsed.add(certificates.get(der));
+        }
+        return validate(parsed);
+    }
+
+    /**
+     * Validate a chain as presented by a client.
+     *
+     * @param chain the chain, the leaf first, then intermediates in any order, the anchor may be included
+     * @return the path from the leaf to the trust anchor, with the anchor
+     * @throws CertificateException if no valid path to a trust anchor is found, or a certificate is revoked
+     */
+    public List<X509Certificate> validate(List<X509Certificate> chain) throws CertificateException {
+        if (chain.isEmpty()) {
+            throw new CertificateException("Empty certificate chain");
+        }
+        Fingerprint[] fingerprints = new Fingerprint[chain.size()];
+        byte[] chainBytes = new byte[32 * chain.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = CertificateCache.fingerprint(chain.get(i));
+            System.arraycopy(fingerprints[i].bytes(), 0, chainBytes, 32 * i, 32);
+        }
+        Fingerprint chainFingerprint = CertificateCache.fingerprint(chainBytes);
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        VerifiedChain verified;
+        synchronized (chains) {
+            verified = chains.get(chainFingerprint);
+            if (verified != null && (now - verified.verifiedAt >= timeToLiveNanos
+                    || nowMillis < verified.notBefore || nowMillis > verified.notAfter)) {
+                chains.remove(chainFingerprint);
+                verified = null;
+            }
+        }
+        if (verified == null) {
+            verified = build(chain, fingerprints, now, nowMillis);
+            synchronized (chains) {
+                chains.put(chainFingerprint, verified);
+            }
+        }
+        List<X509Certificate> path = verified.path;
+        try {
+            for (int i = 0; i < path.size() - 1; i++) {
+                revocationChecker.check(path.get(i), path.get(i + 1));
+            }
+        } catch (CertificateException e) {
+            synchronized (chains) {
+                chains.remove(chainFingerprint);
+            }
+            throw e;
+        }
+        return path;
+    }
+
+    /**
+     * Forget all verified chains and signatures, e.g. after a key compromise.
+     */
+    public void invalidateAll() {
+        synchronized (chains) {
+            chains.clear();
+        }
+        synchronized (signatures) {
+            signatures.clear();
+        }
+    }
+
+    /**
+     * The number of remembered chains, expired ones included until they are looked up or pushed out.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (chains) {
+            return chains.size();
+        }
+    }
+
+    private VerifiedChain build(List<X509Certificate> chain, Fingerprint[] fingerprints, long now, long nowMillis) throws CertificateException {
+        Date date = new Date(nowMillis);
+        List<X509Certificate> path = new ArrayList<>(chain.size() + 1);
+        boolean[] used = new boolean[chain.size()];
+        long notBefore = Long.MIN_VALUE;
+        long notAfter = Long.MAX_VALUE;
+        int index = 0;
+        while (true) {
+            X509Certificate certificate = chain.get(index);
+            Fingerprint fingerprint = fingerprints[index];
+            used[index] = true;
+            path.add(certificate);
+            if (anchorFingerprints.contains(fingerprint)) {
+                // the client presented the anchor itself
+                break;
+            }
+            certificate.checkValidity(date);
+            notBefore = Math.max(notBefore, certificate.getNotBefore().getTime());
+            notAfter = Math.min(notAfter, certificate.getNotAfter().getTime());
+            X509Certificate anchor = findAnchor(certificate, fingerprint);
+            if (anchor != null) {
+                path.add(anchor);
+                break;
+            }
+            if (path.size() >= MAX_PATH_LENGTH) {
+                throw new CertificateException("Certificate path longer than " + MAX_PATH_LENGTH);
+            }
+            index = findIssuer(chain, fingerprints, used, certificate, fingerprint, path.size() - 1);
+            if (index < 0) {
+                throw new CertificateException("No trust anchor found for " + certificate.getSubjectX500Principal());
+            }
+        }
+        validatePkix(path, date);
+        return new VerifiedChain(List.copyOf(path), now, notBefore, notAfter);
+    }
+
+    /**
+     * Validate a built path with PKIX, its last certificate as the trust anchor, revocation is left to the
+     * {@link RevocationChecker}. PKIX doesn't check the extended key usage of the leaf for a purpose, so it's done here.
+     */
+    private static void validatePkix(List<X509Certificate> path, Date date) throws CertificateException {
+        if (path.size() == 1) {
+            // the chain is an anchor
+            return;
+        }
+        List<String> extendedKeyUsage = path.get(0).getExtendedKeyUsage();
+        if (extendedKeyUsage != null && !extendedKeyUsage.contains(CLIENT_AUTH) && !extendedKeyUsage.contains(ANY_EXTENDED_KEY_USAGE)) {
+            throw new CertificateException(
+                    "Extended key usage of " + path.get(0).getSubjectX500Principal() + " doesn't allow client authentication"
+            );
+        }
+        try {
+            PKIXParameters parameters = new PKIXParameters(Set.of(new TrustAnchor(path.get(path.size() - 1), null)));
+            parameters.setRevocationEnabled(false);
+            parameters.setDate(date);
+            CertPathValidator.getInstance("PKIX").validate(
+                    CertificateCache.certificateFactory().generateCertPath(path.subList(0, path.size() - 1)), parameters
+            );
+        } catch (CertPathValidatorException e) {
+            throw new CertificateException("Certificate path rejected: " + e.getMessage(), e);
+        } catch (GeneralSecurityException e) {
+            throw new CertificateException("Certificate path can't be validated", e);
+        }
+    }
+
+    @Nullable
+    private X509Certificate findAnchor(X509Certificate certificate, Fingerprint fingerprint) {
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        byte[] keyId = keyIdentifier(certificate, true);
+        List<Anchor> candidates = keyId == null ? null : anchorsByKeyId.get(new KeyId(keyId));
+        if (candidates == null) {
+            candidates = anchorsBySubject.get(issuer);
+            if (candidates == null) {
+                return null;
+            }
+        }
+        for (Anchor anchor : candidates) {
+            if (anchor.certificate.getSubjectX500Principal().equals(issuer)
+                    && verify(certificate, fingerprint, anchor.certificate, anchor.fingerprint)) {
+                return anchor.certificate;
+            }
+        }
+        return null;
+    }
+
+    private int findIssuer(
+            List<X509Certificate> chain,
+            Fingerprint[] fingerprints,
+            boolean[] used,
+            X509Certificate certificate,
+            Fingerprint fingerprint,
+            int intermediatesBelow
+    ) {
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        for (int i = 1; i < chain.size(); i++) {
+            X509Certificate candidate = chain.get(i);
+            if (!used[i]
+                    && candidate.getSubjectX500Principal().equals(issuer)
+                    && canSign(candidate, intermediatesBelow)
+                    && verify(certificate, fingerprint, candidate, fingerprints[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean verify(X509Certificate certificate, Fingerprint fingerprint, X509Certificate issuer, Fingerprint issuerFingerprint) {
+        byte[] pair = new byte[64];
+        System.arraycopy(fingerprint.bytes(), 0, pair, 0, 32);
+        System.arraycopy(issuerFingerprint.bytes(), 0, pair, 32, 32);
+        Fingerprint signature = new Fingerprint(pair);
+        synchronized (signatures) {
+            if (signatures.containsKey(signature)) {
+                return true;
+            }
+        }
+        try {
+            certificate.verify(issuer.getPublicKey());
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        synchronized (signatures) {
+            signatures.put(signature, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    private static boolean canSign(X509Certificate certificate, int intermediatesBelow) {
+        // -1 if no CA, the path length constraint if any, else Integer.MAX_VALUE
+        if (certificate.getBasicConstraints() < intermediatesBelow || certificate.getBasicConstraints() < 0) {
+            return false;
+        }
+        boolean[] keyUsage = certificate.getKeyUsage();
+        return keyUsage == null || keyUsage.length > KEY_CERT_SIGN && keyUsage[KEY_CERT_SIGN];
+    }
+
+    @Nullable
+    private static byte[] keyIdentifier(X509Certificate certificate, boolean authority) {
+        byte[] extension = certificate.getExtensionValue(
+                authority ? Extension.authorityKeyIdentifier.getId() : Extension.subjectKeyIdentifier.getId()
+        );
+        if (extension == null) {
+            return null;
+        }
+        try {
+            byte[] octets = ASN1OctetString.getInstance(extension).getOctets();
+            return authority
+                    ? AuthorityKeyIdentifier.getInstance(octets).getKeyIdentifier()
+                    : SubjectKeyIdentifier.getInstance(octets).getKeyIdentifier();
+        } catch (IllegalArgumentException e) {
+            // a malformed identifier, fall back to the names
+            return null;
+        }
+    }
+
+    private static <V> LinkedHashMap<Fingerprint, V> newLruMap(int maximumSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, V> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+}
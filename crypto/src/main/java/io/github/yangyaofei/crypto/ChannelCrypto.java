@@ -0,0 +1,55 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+/**
+ * Runs a cipher from one file channel to another over memory-mapped windows.
+ * <p>
+ * The cipher reads the mapped source and writes the mapped target, so the data is neither copied through heap
+ * buffers nor moved with read and write calls. AEAD decryption is still buffered by the provider until the tag is
+ * checked, which limits a single message to 2GiB, larger data should use the segmented format.
+ */
+final class ChannelCrypto {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private ChannelCrypto() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * Run the initialized cipher over the whole source into the target.
+     * <p>
+     * The target is cut to the produced length, and emptied when the cipher fails, so a failed decryption leaves no
+     * unauthenticated plaintext behind.
+     *
+     * @return the number of bytes written to the target
+     */
+    static long crypt(FileChannel source, FileChannel target, Cipher cipher) throws IOException, GeneralSecurityException {
+        long size = source.size();
+        long written = 0;
+        try {
+            for (long position = 0; position < size; position += WINDOW_SIZE) {
+                long length = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer in = source.map(FileChannel.MapMode.READ_ONLY, position, length);
+                written += cipher.update(in, map(target, written, cipher.getOutputSize((int) length)));
+            }
+            written += cipher.doFinal(EMPTY, map(target, written, cipher.getOutputSize(0)));
+            return written;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            written = 0;
+            throw e;
+        } finally {
+            target.truncate(written);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel target, long position, int length) throws IOException {
+        return length == 0 ? ByteBuffer.allocate(0) : target.map(FileChannel.MapMode.READ_WRITE, position, length);
+    }
+}
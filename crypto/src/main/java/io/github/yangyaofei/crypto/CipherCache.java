@@ -0,0 +1,69 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per thread cache of {@link Cipher} instances, to skip the provider lookup of {@link Cipher#getInstance(String)} on
+ * every call.
+ * <p>
+ * A cached cipher is borrowed for one call only: it must be initialized before use, and must not escape the call,
+ * e.g. into a {@link javax.crypto.CipherInputStream}, because the next call on the same thread re-initializes the
+ * same instance. Encryption and decryption use different instances.
+ */
+final class CipherCache {
+    private static final ThreadLocal<Map<String, Cipher>> ENCRYPTORS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Cipher>> DECRYPTORS = ThreadLocal.withInitial(HashMap::new);
+
+    private CipherCache() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * Get the cipher of the current thread for the transformation and mode.
+     *
+     * @param transformation the transformation, e.g. ChaCha20-Poly1305
+     * @param opmode         {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @return the cipher, to be initialized by the caller
+     * @throws NoSuchAlgorithmException if the transformation is not available
+     * @throws NoSuchPaddingException   if the padding of the transformation is not available
+     */
+    static Cipher get(String transformation, int opmode) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Map<String, Cipher> ciphers = (opmode == Cipher.ENCRYPT_MODE ? ENCRYPTORS : DECRYPTORS).get();
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Initialize a cached cipher with a nonce.
+     * <p>
+     * The JDK ChaCha20-Poly1305 refuses an init with the same key and nonce as the previous one, also for decrypting
+     * the same message twice. For decryption the instance is moved to a scratch nonce first and initialized again,
+     * for encryption the refusal is kept since it means a reused nonce. AES-GCM only refuses it for encryption.
+     */
+    static void init(Cipher cipher, int opmode, Key key, AlgorithmParameterSpec nonce) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        try {
+            cipher.init(opmode, key, nonce);
+        } catch (InvalidKeyException e) {
+            if (opmode != Cipher.DECRYPT_MODE || !(nonce instanceof IvParameterSpec ivParameterSpec)) {
+                throw e;
+            }
+            byte[] scratch = ivParameterSpec.getIV();
+            scratch[0] ^= 1;
+            cipher.init(opmode, key, new IvParameterSpec(scratch));
+            cipher.init(opmode, key, nonce);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compress-then-encrypt stream format, every segment is deflated on its own and sealed like a {@link SegmentedStream}
+ * segment, so segments can be compressed, sealed, opened and inflated in parallel.
+ * <p>
+ * Layout:
+ * <pre>
+ * header: | version 1B | algorithm 1B | compression 1B | segment size 4B | nonce prefix 7B |
+ * frame:  | sealed length 4B | sealed(mode 1B || body) |
+ * </pre>
+ * The mode is 1 if the body is raw deflate data and 0 if the segment is stored, when deflate doesn't make it smaller.
+ * Nonce and associated data work as in {@link SegmentedStream}, the header is authenticated with every segment and
+ * the last segment is marked in its nonce, so reordering, dropping and truncating frames fail authentication.
+ */
+final class CompressedStream {
+    static final byte VERSION = 1;
+    static final byte COMPRESSION_DEFLATE = 1;
+    static final int HEADER_LENGTH = 3 + 4 + SegmentedStream.NONCE_PREFIX_LENGTH;
+    // bigger than the default of the plain segmented stream, deflate finds more to reuse in a bigger window
+    static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+    // segments in flight, enough to keep every core busy while the next segment is read
+    static final int DEFAULT_DEPTH = Runtime.getRuntime().availableProcessors() + 1;
+    private static final int FRAME_LENGTH = 4;
+    private static final byte MODE_STORED = 0;
+    private static final byte MODE_DEFLATE = 1;
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private CompressedStream() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    static SegmentedStream.Header newHeader(AeadAlgorithm algorithm, int segmentSize) {
+        SegmentedStream.checkSegmentSize(segmentSize);
+        byte[] prefix = new byte[SegmentedStream.NONCE_PREFIX_LENGTH];
+        RandomSource.nextBytes(prefix);
+        byte[] encoded = new byte[HEADER_LENGTH];
+        encoded[0] = VERSION;
+        encoded[1] = algorithm.id();
+        encoded[2] = COMPRESSION_DEFLATE;
+        putInt(encoded, 3, segmentSize);
+        System.arraycopy(prefix, 0, encoded, 7, prefix.length);
+        return new SegmentedStream.Header(algorithm, segmentSize, prefix, encoded);
+    }
+
+    static SegmentedStream.Header readHeader(InputStream in) throws IOException {
+        byte[] encoded = new byte[HEADER_LENGTH];
+        if (in.readNBytes(encoded, 0, HEADER_LENGTH) < HEADER_LENGTH) {
+            throw new IOException("Invalid compressed stream: header too short");
+        }
+        if (encoded[0] != VERSION) {
+            throw new IOException("Invalid compressed stream: unsupported version " + encoded[0]);
+        }
+        if (encoded[2] != COMPRESSION_DEFLATE) {
+            throw new IOException("Invalid compressed stream: unsupported compression " + encoded[2]);
+        }
+        AeadAlgorithm algorithm;
+        try {
+            algorithm = AeadAlgorithm.fromId(encoded[1]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid compressed stream: unsupported algorithm " + encoded[1], e);
+        }
+        int segmentSize = getInt(encoded, 3);
+        if (segmentSize < SegmentedStream.MIN_SEGMENT_SIZE || segmentSize > SegmentedStream.MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid compressed stream: segment size " + segmentSize + " out of range");
+        }
+        byte[] prefix = new byte[SegmentedStream.NONCE_PREFIX_LENGTH];
+        System.arraycopy(encoded, 7, prefix, 0, prefix.length);
+        return new SegmentedStream.Header(algorithm, segmentSize, prefix, encoded);
+    }
+
+    /**
+     * Deflate and seal one segment into a frame.
+     */
+    static byte[] seal(SecretKey key, SegmentedStream.Header header, int level, long index, boolean last, byte[] data, int length)
+            throws GeneralSecurityException {
+        byte[] inner = new byte[1 + length];
+        int bodyLength = deflate(level, data, length, inner);
+        if (bodyLength < 0) {
+            inner[0] = MODE_STORED;
+            System.arraycopy(data, 0, inner, 1, length);
+            bodyLength = length;
+        } else {
+            inner[0] = MODE_DEFLATE;
+        }
+        byte[] frame = new byte[FRAME_LENGTH + 1 + bodyLength + SegmentedStream.TAG_LENGTH];
+        Cipher cipher = CipherCache.get(header.algorithm().getTransformation(), Cipher.ENCRYPT_MODE);
+        CipherCache.init(cipher, Cipher.ENCRYPT_MODE, key, header.algorithm().parameterSpec(SegmentedStream.nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        int sealedLength = cipher.doFinal(inner, 0, 1 + bodyLength, frame, FRAME_LENGTH);
+        putInt(frame, 0, sealedLength);
+        return frame;
+    }
+
+    /**
+     * Open and inflate one sealed frame body.
+     */
+    static byte[] open(SecretKey key, SegmentedStream.Header header, long index, boolean last, byte[] sealed)
+            throws GeneralSecurityException, DataFormatException {
+        Cipher cipher = CipherCache.get(header.algorithm().getTransformation(), Cipher.DECRYPT_MODE);
+        CipherCache.init(cipher, Cipher.DECRYPT_MODE, key, header.algorithm().parameterSpec(SegmentedStream.nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        byte[] inner = cipher.doFinal(sealed);
+        byte[] data;
+        if (inner[0] == MODE_STORED) {
+            data = new byte[inner.length - 1];
+            System.arraycopy(inner, 1, data, 0, data.length);
+        } else if (inner[0] == MODE_DEFLATE) {
+            data = inflate(inner, header.segmentSize());
+        } else {
+            throw new DataFormatException("Unknown segment mode " + inner[0]);
+        }
+        if (!last && data.length != header.segmentSize()) {
+            throw new DataFormatException("Segment " + index + " has " + data.length + " bytes, not a full segment");
+        }
+        return data;
+    }
+
+    /**
+     * Deflate into {@code inner} after the mode byte.
+     *
+     * @return the deflated length, -1 if it isn't smaller than the data
+     */
+    private static int deflate(int level, byte[] data, int length, byte[] inner) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished() && n < length) {
+            n += deflater.deflate(inner, 1 + n, length - n);
+        }
+        return deflater.finished() && n < length ? n : -1;
+    }
+
+    private static byte[] inflate(byte[] inner, int segmentSize) throws DataFormatException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(inner, 1, inner.length - 1);
+        // one byte more than a segment may have, to detect a body which inflates to more
+        byte[] buffer = new byte[segmentSize + 1];
+        int n = 0;
+        while (!inflater.finished() && n < buffer.length) {
+            int inflated = inflater.inflate(buffer, n, buffer.length - n);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated deflate data");
+            }
+            n += inflated;
+        }
+        if (!inflater.finished() || n > segmentSize) {
+            throw new DataFormatException("Segment inflates to more than the segment size");
+        }
+        byte[] data = new byte[n];
+        System.arraycopy(buffer, 0, data, 0, n);
+        return data;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Base of the two directions: reads segments ahead, runs up to {@code depth} of them on the executor and hands out
+     * the results in order.
+     */
+    private abstract static class PipelineInputStream extends InputStream {
+        protected final InputStream source;
+        private final Executor executor;
+        private final int depth;
+        private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private byte[] buffer = new byte[0];
+        private int position;
+        protected boolean sourceDone;
+
+        PipelineInputStream(InputStream source, Executor executor, int depth) {
+            this.source = source;
+            this.executor = executor;
+            this.depth = depth;
+        }
+
+        /**
+         * Read the next segment from the source and return its task, or null and set {@link #sourceDone} at the end.
+         */
+        abstract SegmentTask nextTask() throws IOException;
+
+        @FunctionalInterface
+        interface SegmentTask {
+            byte[] run() throws IOException, GeneralSecurityException, DataFormatException;
+        }
+
+        private boolean nextSegment() throws IOException {
+            while (!sourceDone && pending.size() < depth) {
+                SegmentTask task = nextTask();
+                if (task == null) {
+                    break;
+                }
+                pending.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.run();
+                    } catch (IOException | GeneralSecurityException | DataFormatException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            CompletableFuture<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                buffer = next.join();
+            } catch (CompletionException e) {
+                pending.clear();
+                sourceDone = true;
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(failure(e.getCause()), e.getCause());
+            }
+            position = 0;
+            return true;
+        }
+
+        abstract String failure(Throwable cause);
+
+        @Override
+        public int read() throws IOException {
+            while (position == buffer.length) {
+                if (!nextSegment()) {
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == buffer.length) {
+                if (!nextSegment()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            pending.clear();
+            sourceDone = true;
+            source.close();
+        }
+    }
+
+    /**
+     * Reads plaintext from the source and returns the compressed sealed stream, header first.
+     */
+    static final class EncryptInputStream extends PipelineInputStream {
+        private final SecretKey key;
+        private final SegmentedStream.Header header;
+        private final int level;
+        private boolean headerSent;
+        // the first byte of the next segment, read to tell whether the current segment is the last one
+        private int carried = -1;
+        private long index;
+
+        EncryptInputStream(InputStream source, SecretKey key, SegmentedStream.Header header, int level, Executor executor, int depth) {
+            super(source, executor, depth);
+            this.key = key;
+            this.header = header;
+            this.level = level;
+        }
+
+        @Override
+        SegmentTask nextTask() throws IOException {
+            if (!headerSent) {
+                headerSent = true;
+                byte[] encoded = header.encoded().clone();
+                return () -> encoded;
+            }
+            int segmentSize = header.segmentSize();
+            byte[] data = new byte[segmentSize + 1];
+            int n = 0;
+            if (carried >= 0) {
+                data[0] = (byte) carried;
+                n = 1;
+            }
+            n += source.readNBytes(data, n, segmentSize + 1 - n);
+            boolean last = n <= segmentSize;
+            if (last) {
+                sourceDone = true;
+            } else {
+                carried = data[segmentSize] & 0xFF;
+            }
+            long segment = index++;
+            int length = last ? n : segmentSize;
+            return () -> seal(key, header, level, segment, last, data, length);
+        }
+
+        @Override
+        String failure(Throwable cause) {
+            return "Failed to seal compressed segment";
+        }
+    }
+
+    /**
+     * Reads a compressed sealed stream after its header and returns the plaintext.
+     * <p>
+     * A segment is released only after its tag is checked, a missing last segment is reported as an error.
+     */
+    static final class DecryptInputStream extends PipelineInputStream {
+        private final SecretKey key;
+        private final SegmentedStream.Header header;
+        private final int maxSealedLength;
+        private int nextLength = -1;
+        private long index;
+
+        DecryptInputStream(InputStream source, SecretKey key, SegmentedStream.Header header, Executor executor, int depth) {
+            super(source, executor, depth);
+            this.key = key;
+            this.header = header;
+            this.maxSealedLength = 1 + header.segmentSize() + SegmentedStream.TAG_LENGTH;
+        }
+
+        @Override
+        SegmentTask nextTask() throws IOException {
+            int length = nextLength >= 0 ? nextLength : readLength(true);
+            byte[] sealed = source.readNBytes(length);
+            if (sealed.length < length) {
+                throw new IOException("Invalid compressed stream: truncated segment " + index);
+            }
+            nextLength = readLength(false);
+            boolean last = nextLength < 0;
+            sourceDone = last;
+            long segment = index++;
+            return () -> open(key, header, segment, last, sealed);
+        }
+
+        private int readLength(boolean required) throws IOException {
+            byte[] bytes = source.readNBytes(FRAME_LENGTH);
+            if (bytes.length == 0 && !required) {
+                return -1;
+            }
+            if (bytes.length < FRAME_LENGTH) {
+                throw new IOException("Invalid compressed stream: truncated frame length at segment " + index);
+            }
+            int length = getInt(bytes, 0);
+            if (length < 1 + SegmentedStream.TAG_LENGTH || length > maxSealedLength) {
+                throw new IOException("Invalid compressed stream: segment length " + length + " out of range");
+            }
+            return length;
+        }
+
+        @Override
+        String failure(Throwable cause) {
+            return "Invalid compressed stream: " + (cause instanceof GeneralSecurityException
+                    ? "segment failed authentication" : "corrupt deflate data");
+        }
+    }
+}
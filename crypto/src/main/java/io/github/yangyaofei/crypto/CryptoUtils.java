@@ -1,25 +1,44 @@
 package io.github.yangyaofei.crypto;
 
 import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.annotation.Nullable;
 import javax.crypto.*;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 
 /**
- * Crypto utils for CharChar20-Poly1305
+ * Crypto utils for CharChar20-Poly1305, and AES-256-GCM with the {@link AeadAlgorithm} overloads
  */
 @SuppressWarnings("unused")
 public class CryptoUtils {
 
     private final static String CHACHA20_POLY_1305 = "ChaCha20-Poly1305";
     private final static String CHACHA20 = "ChaCha20";
+    private final static int NONCE_LENGTH = 12;
+    private final static int TAG_LENGTH = 16;
+    // nonce scratch buffer, the nonce is copied out before the next use on the thread
+    private final static ThreadLocal<byte[]> NONCES = ThreadLocal.withInitial(() -> new byte[NONCE_LENGTH]);
+    private final static DerivedKeyCache DERIVED_KEYS = new DerivedKeyCache(1024, Duration.ofMinutes(10));
 
     /**
      * Encrypt a InputStream with key and nonce with ChaCha20-Poly1305
@@ -34,7 +53,24 @@ public class CryptoUtils {
      * @throws InvalidKeyException                the invalid key exception
      */
     public static InputStream encrypt(InputStream data, SecretKey key, byte[] nonce) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-        return crypt(data, key, nonce, CHACHA20_POLY_1305, Cipher.ENCRYPT_MODE);
+        return crypt(data, key, nonce, AeadAlgorithm.CHACHA20_POLY_1305, Cipher.ENCRYPT_MODE);
+    }
+
+    /**
+     * Encrypt a InputStream with key and nonce with the given algorithm, same as {@link #encrypt(InputStream, SecretKey, byte[])}
+     *
+     * @param data      the data
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param nonce     the nonce 12byte
+     * @param algorithm the algorithm
+     * @return the input stream
+     * @throws NoSuchPaddingException             the no such padding exception
+     * @throws NoSuchAlgorithmException           the no such algorithm exception
+     * @throws InvalidAlgorithmParameterException the invalid algorithm parameter exception
+     * @throws InvalidKeyException                the invalid key exception
+     */
+    public static InputStream encrypt(InputStream data, SecretKey key, byte[] nonce, AeadAlgorithm algorithm) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        return crypt(data, key, nonce, algorithm, Cipher.ENCRYPT_MODE);
     }
 
     /**
@@ -80,6 +116,24 @@ public class CryptoUtils {
         return encrypt(data, deHex(key), deHex(nonce));
     }
 
+    /**
+     * Encrypt a InputStream with hex encoded key and nonce with the given algorithm, same as {@link #encrypt(InputStream, String, String)}
+     *
+     * @param data      the data
+     * @param key       the key with hex encoded
+     * @param nonce     the nonce with hex encoded
+     * @param algorithm the algorithm
+     * @return the input stream
+     * @throws NoSuchAlgorithmException           the no such algorithm exception
+     * @throws InvalidAlgorithmParameterException the invalid algorithm parameter exception
+     * @throws NoSuchPaddingException             the no such padding exception
+     * @throws InvalidKeyException                the invalid key exception
+     * @throws DecoderException                   the decoder exception, if the key or nonce is not hex encoded string
+     */
+    public static InputStream encrypt(InputStream data, String key, String nonce, AeadAlgorithm algorithm) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchPaddingException, InvalidKeyException, DecoderException {
+        return encrypt(data, new SecretKeySpec(deHex(key), algorithm.getKeyAlgorithm()), deHex(nonce), algorithm);
+    }
+
 
     /**
      * Decrypt a InputStream with key and nonce with ChaCha20-Poly1305 same as {@link #encrypt(InputStream, SecretKey, byte[])}
@@ -94,7 +148,24 @@ public class CryptoUtils {
      * @throws InvalidKeyException                the invalid key exception
      */
     public static InputStream decrypt(InputStream data, SecretKey key, byte[] nonce) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-        return crypt(data, key, nonce, CHACHA20_POLY_1305, Cipher.DECRYPT_MODE);
+        return crypt(data, key, nonce, AeadAlgorithm.CHACHA20_POLY_1305, Cipher.DECRYPT_MODE);
+    }
+
+    /**
+     * Decrypt a InputStream with key and nonce with the given algorithm, same as {@link #encrypt(InputStream, SecretKey, byte[], AeadAlgorithm)}
+     *
+     * @param data      the data
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param nonce     the nonce 12byte
+     * @param algorithm the algorithm
+     * @return the input stream
+     * @throws NoSuchPaddingException             the no such padding exception
+     * @throws NoSuchAlgorithmException           the no such algorithm exception
+     * @throws InvalidAlgorithmParameterException the invalid algorithm parameter exception
+     * @throws InvalidKeyException                the invalid key exception
+     */
+    public static InputStream decrypt(InputStream data, SecretKey key, byte[] nonce, AeadAlgorithm algorithm) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        return crypt(data, key, nonce, algorithm, Cipher.DECRYPT_MODE);
     }
 
     /**
@@ -111,7 +182,7 @@ public class CryptoUtils {
      */
     public static InputStream decrypt(InputStream data, byte[] key, byte[] nonce) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchPaddingException, InvalidKeyException {
         SecretKeySpec secretKeySpec = new SecretKeySpec(key, CHACHA20_POLY_1305);
-        return encrypt(data, secretKeySpec, nonce);
+        return decrypt(data, secretKeySpec, nonce);
     }
 
     /**
@@ -128,17 +199,870 @@ public class CryptoUtils {
      * @throws DecoderException                   the decoder exception
      */
     public static InputStream decrypt(InputStream data, String key, String nonce) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchPaddingException, InvalidKeyException, DecoderException {
-        return encrypt(data, deHex(key), deHex(nonce));
+        return decrypt(data, deHex(key), deHex(nonce));
+    }
+
+    /**
+     * Decrypt a InputStream with hex encoded key and nonce with the given algorithm, same as {@link #encrypt(InputStream, String, String, AeadAlgorithm)}
+     *
+     * @param data      the data
+     * @param key       the key with hex encoded
+     * @param nonce     the nonce with hex encoded
+     * @param algorithm the algorithm
+     * @return the input stream
+     * @throws NoSuchAlgorithmException           the no such algorithm exception
+     * @throws InvalidAlgorithmParameterException the invalid algorithm parameter exception
+     * @throws NoSuchPaddingException             the no such padding exception
+     * @throws InvalidKeyException                the invalid key exception
+     * @throws DecoderException                   the decoder exception, if the key or nonce is not hex encoded string
+     */
+    public static InputStream decrypt(InputStream data, String key, String nonce, AeadAlgorithm algorithm) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchPaddingException, InvalidKeyException, DecoderException {
+        return decrypt(data, new SecretKeySpec(deHex(key), algorithm.getKeyAlgorithm()), deHex(nonce), algorithm);
     }
 
 
-    @SuppressWarnings("SameParameterValue")
-    private static InputStream crypt(InputStream data, SecretKey key, byte[] nonce, String alg, int opMode) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-        Cipher cipher = Cipher.getInstance(alg);
-        cipher.init(opMode, key, new IvParameterSpec(nonce));
+    /**
+     * Encrypt a file with key and nonce with ChaCha20-Poly1305, the output is the same as
+     * {@link #encrypt(InputStream, SecretKey, byte[])}, see {@link #encrypt(FileChannel, FileChannel, SecretKey, byte[])}
+     *
+     * @param source the plaintext file
+     * @param target the encrypted file, created or truncated
+     * @param key    the key 256bit
+     * @param nonce  the nonce 12byte
+     * @throws IOException              if a file can't be read or written
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key or nonce is invalid
+     */
+    public static void encrypt(Path source, Path target, SecretKey key, byte[] nonce) throws IOException, GeneralSecurityException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            encrypt(in, out, key, nonce);
+        }
+    }
+
+    /**
+     * Encrypt a FileChannel with key and nonce with ChaCha20-Poly1305, the output is the same as
+     * {@link #encrypt(InputStream, SecretKey, byte[])}
+     * <p>
+     * Both channels are memory-mapped window by window and the cipher works on the mapped buffers, so the data is not
+     * copied through heap buffers. The channels are not closed, the target must be open for reading and writing.
+     *
+     * @param source the plaintext channel
+     * @param target the encrypted channel, open for reading and writing
+     * @param key    the key 256bit
+     * @param nonce  the nonce 12byte
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key or nonce is invalid
+     */
+    public static void encrypt(FileChannel source, FileChannel target, SecretKey key, byte[] nonce) throws IOException, GeneralSecurityException {
+        encrypt(source, target, key, nonce, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt a FileChannel with key and nonce with the given algorithm, same as {@link #encrypt(FileChannel, FileChannel, SecretKey, byte[])}
+     *
+     * @param source    the plaintext channel
+     * @param target    the encrypted channel, open for reading and writing
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param nonce     the nonce 12byte
+     * @param algorithm the algorithm
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if the algorithm is not available or the key or nonce is invalid
+     */
+    public static void encrypt(FileChannel source, FileChannel target, SecretKey key, byte[] nonce, AeadAlgorithm algorithm)
+            throws IOException, GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(algorithm.getTransformation());
+        cipher.init(Cipher.ENCRYPT_MODE, key, algorithm.parameterSpec(nonce));
+        ChannelCrypto.crypt(source, target, cipher);
+    }
+
+    /**
+     * Decrypt a file with key and nonce with ChaCha20-Poly1305 same as {@link #encrypt(Path, Path, SecretKey, byte[])}
+     *
+     * @param source the encrypted file
+     * @param target the plaintext file, created or truncated
+     * @param key    the key 256bit
+     * @param nonce  the nonce 12byte
+     * @throws IOException              if a file can't be read or written
+     * @throws GeneralSecurityException if the data fails authentication, or the key or nonce is invalid
+     */
+    public static void decrypt(Path source, Path target, SecretKey key, byte[] nonce) throws IOException, GeneralSecurityException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            decrypt(in, out, key, nonce);
+        }
+    }
+
+    /**
+     * Decrypt a FileChannel with key and nonce with ChaCha20-Poly1305 same as {@link #encrypt(FileChannel, FileChannel, SecretKey, byte[])}
+     * <p>
+     * The provider holds the ciphertext until the tag is checked, so this is limited to 2GiB, use
+     * {@link #decryptSegmented(FileChannel, FileChannel, SecretKey, Executor)} for larger files. The target is
+     * emptied if the data fails authentication.
+     *
+     * @param source the encrypted channel
+     * @param target the plaintext channel, open for reading and writing
+     * @param key    the key 256bit
+     * @param nonce  the nonce 12byte
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if the data fails authentication, or the key or nonce is invalid
+     */
+    public static void decrypt(FileChannel source, FileChannel target, SecretKey key, byte[] nonce) throws IOException, GeneralSecurityException {
+        decrypt(source, target, key, nonce, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Decrypt a FileChannel with key and nonce with the given algorithm, same as {@link #decrypt(FileChannel, FileChannel, SecretKey, byte[])}
+     *
+     * @param source    the encrypted channel
+     * @param target    the plaintext channel, open for reading and writing
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param nonce     the nonce 12byte
+     * @param algorithm the algorithm
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if the data fails authentication, or the key or nonce is invalid
+     */
+    public static void decrypt(FileChannel source, FileChannel target, SecretKey key, byte[] nonce, AeadAlgorithm algorithm)
+            throws IOException, GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(algorithm.getTransformation());
+        cipher.init(Cipher.DECRYPT_MODE, key, algorithm.parameterSpec(nonce));
+        ChannelCrypto.crypt(source, target, cipher);
+    }
+
+    /**
+     * Encrypt a InputStream into the segmented ChaCha20-Poly1305 format with the default segment size (64KiB).
+     * <p>
+     * Unlike {@link #encrypt(InputStream, SecretKey, byte[])} the stream is cut into segments which are authenticated
+     * on their own, so decryption works in bounded memory and any byte range can be decrypted without reading the
+     * whole stream, see {@link #decryptSegmented(SeekableByteChannel, SecretKey, long, long)}. The nonce is generated
+     * randomly and stored in the stream header.
+     *
+     * @param data the data
+     * @param key  the key 256bit
+     * @return the input stream of the sealed stream
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream encryptSegmented(InputStream data, SecretKey key) throws GeneralSecurityException {
+        return encryptSegmented(data, key, SegmentedStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Encrypt a InputStream into the segmented ChaCha20-Poly1305 format, same as {@link #encryptSegmented(InputStream, SecretKey)}
+     *
+     * @param data        the data
+     * @param key         the key 256bit
+     * @param segmentSize the plaintext size of a segment, between 1KiB and 16MiB
+     * @return the input stream of the sealed stream
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream encryptSegmented(InputStream data, SecretKey key, int segmentSize) throws GeneralSecurityException {
+        return encryptSegmented(data, key, segmentSize, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt a InputStream into the segmented format with the given algorithm, same as {@link #encryptSegmented(InputStream, SecretKey)}
+     * <p>
+     * The algorithm is stored in the stream header, decryption picks it up from there.
+     *
+     * @param data        the data
+     * @param key         the key 256bit, of the key algorithm of {@code algorithm}
+     * @param segmentSize the plaintext size of a segment, between 1KiB and 16MiB
+     * @param algorithm   the algorithm
+     * @return the input stream of the sealed stream
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static InputStream encryptSegmented(InputStream data, SecretKey key, int segmentSize, AeadAlgorithm algorithm)
+            throws GeneralSecurityException {
+        SegmentedStream.Header header = SegmentedStream.newHeader(algorithm, segmentSize);
+        return new SegmentedStream.EncryptInputStream(data, SegmentedStream.newCipher(header), key, header);
+    }
+
+    /**
+     * Encrypt a InputStream into the segmented ChaCha20-Poly1305 format, same as {@link #encryptSegmented(InputStream, SecretKey)}
+     *
+     * @param data the data
+     * @param key  the key 256bit
+     * @return the input stream of the sealed stream
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream encryptSegmented(InputStream data, byte[] key) throws GeneralSecurityException {
+        return encryptSegmented(data, new SecretKeySpec(key, CHACHA20_POLY_1305));
+    }
+
+    /**
+     * Encrypt a InputStream into the segmented format with the given algorithm, same as {@link #encryptSegmented(InputStream, SecretKey)}
+     *
+     * @param data      the data
+     * @param key       the key 256bit
+     * @param algorithm the algorithm
+     * @return the input stream of the sealed stream
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static InputStream encryptSegmented(InputStream data, byte[] key, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        return encryptSegmented(
+                data, new SecretKeySpec(key, algorithm.getKeyAlgorithm()), SegmentedStream.DEFAULT_SEGMENT_SIZE, algorithm
+        );
+    }
+
+    /**
+     * Decrypt a InputStream in the segmented format of {@link #encryptSegmented(InputStream, SecretKey)}
+     * <p>
+     * Every segment is checked before its plaintext is returned, a failed check or a truncated stream is reported as
+     * {@link IOException} when reading.
+     *
+     * @param data the sealed stream
+     * @param key  the key 256bit
+     * @return the input stream of the plaintext
+     * @throws IOException              if the header can't be read
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream decryptSegmented(InputStream data, SecretKey key) throws IOException, GeneralSecurityException {
+        SegmentedStream.Header header = SegmentedStream.readHeader(data);
+        return new SegmentedStream.DecryptInputStream(data, SegmentedStream.newCipher(header), key, header);
+    }
+
+    /**
+     * Decrypt a InputStream in the segmented format, same as {@link #decryptSegmented(InputStream, SecretKey)}
+     *
+     * @param data the sealed stream
+     * @param key  the key 256bit
+     * @return the input stream of the plaintext
+     * @throws IOException              if the header can't be read
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream decryptSegmented(InputStream data, byte[] key) throws IOException, GeneralSecurityException {
+        SegmentedStream.Header header = SegmentedStream.readHeader(data);
+        SecretKey secretKey = new SecretKeySpec(key, header.algorithm().getKeyAlgorithm());
+        return new SegmentedStream.DecryptInputStream(data, SegmentedStream.newCipher(header), secretKey, header);
+    }
+
+    /**
+     * Decrypt a byte range of a sealed stream in the segmented format of {@link #encryptSegmented(InputStream, SecretKey)}
+     * <p>
+     * Only the segments covering the range are read and checked. The channel is read from its current state and
+     * moved, it is not closed until the returned stream is closed.
+     *
+     * @param data     the sealed stream
+     * @param key      the key 256bit
+     * @param position the position of the range in the plaintext
+     * @param length   the length of the range, clamped to the end of the plaintext
+     * @return the input stream of the plaintext range
+     * @throws IOException              if the header can't be read or the stream is truncated
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream decryptSegmented(SeekableByteChannel data, SecretKey key, long position, long length)
+            throws IOException, GeneralSecurityException {
+        data.position(0);
+        InputStream source = Channels.newInputStream(data);
+        SegmentedStream.Header header = SegmentedStream.readHeader(source);
+        long plaintextLength = SegmentedStream.plaintextLength(data.size(), header.segmentSize());
+        if (position < 0 || length < 0 || position > plaintextLength) {
+            throw new IllegalArgumentException(
+                    "Range [" + position + ", +" + length + ") is out of the plaintext length " + plaintextLength
+            );
+        }
+        length = Math.min(length, plaintextLength - position);
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        long index = position / header.segmentSize();
+        data.position(header.segmentOffset(index));
+        return new SegmentedStream.DecryptInputStream(
+                source, SegmentedStream.newCipher(header), key, header, index, (int) (position % header.segmentSize()), length
+        );
+    }
+
+    /**
+     * Encrypt a file into the segmented ChaCha20-Poly1305 format on all cores of {@link ForkJoinPool#commonPool()}
+     * <p>
+     * The output is the same as {@link #encryptSegmented(InputStream, SecretKey)}, see
+     * {@link #encryptSegmented(FileChannel, FileChannel, SecretKey, int, Executor)}.
+     *
+     * @param source the plaintext file
+     * @param target the sealed file, created or truncated
+     * @param key    the key 256bit
+     * @throws IOException              if a file can't be read or written
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static void encryptSegmented(Path source, Path target, SecretKey key) throws IOException, GeneralSecurityException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            encryptSegmented(in, out, key, SegmentedStream.DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Encrypt a file into the segmented ChaCha20-Poly1305 format in parallel
+     * <p>
+     * The segments are grouped into tasks of a few MiB which run on {@code executor}, every task seals its segments
+     * with its own cipher and writes them at their final offset, so the throughput scales with the threads of the
+     * executor. The channels are memory-mapped and not closed, the target must be open for reading and writing.
+     *
+     * @param source      the plaintext channel
+     * @param target      the sealed channel, open for reading and writing
+     * @param key         the key 256bit
+     * @param segmentSize the plaintext size of a segment, between 1KiB and 16MiB
+     * @param executor    the executor running the tasks, e.g. a {@link ForkJoinPool}
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static void encryptSegmented(FileChannel source, FileChannel target, SecretKey key, int segmentSize, Executor executor)
+            throws IOException, GeneralSecurityException {
+        encryptSegmented(source, target, key, segmentSize, AeadAlgorithm.CHACHA20_POLY_1305, executor);
+    }
+
+    /**
+     * Encrypt a file into the segmented format with the given algorithm in parallel, same as
+     * {@link #encryptSegmented(FileChannel, FileChannel, SecretKey, int, Executor)}
+     *
+     * @param source      the plaintext channel
+     * @param target      the sealed channel, open for reading and writing
+     * @param key         the key 256bit, of the key algorithm of {@code algorithm}
+     * @param segmentSize the plaintext size of a segment, between 1KiB and 16MiB
+     * @param algorithm   the algorithm
+     * @param executor    the executor running the tasks, e.g. a {@link ForkJoinPool}
+     * @throws IOException              if a channel can't be read or written
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static void encryptSegmented(
+            FileChannel source, FileChannel target, SecretKey key, int segmentSize, AeadAlgorithm algorithm, Executor executor
+    ) throws IOException, GeneralSecurityException {
+        SegmentedFiles.encrypt(source, target, key, segmentSize, algorithm, executor);
+    }
+
+    /**
+     * Decrypt a file in the segmented format on all cores of {@link ForkJoinPool#commonPool()}, see
+     * {@link #decryptSegmented(FileChannel, FileChannel, SecretKey, Executor)}.
+     *
+     * @param source the sealed file
+     * @param target the plaintext file, created or truncated
+     * @param key    the key 256bit
+     * @throws IOException              if a file can't be read or written, or a segment fails authentication
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static void decryptSegmented(Path source, Path target, SecretKey key) throws IOException, GeneralSecurityException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            decryptSegmented(in, out, key, ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Decrypt a file in the segmented format in parallel, same as {@link #encryptSegmented(FileChannel, FileChannel, SecretKey, int, Executor)}
+     * <p>
+     * Segments are released as soon as they are checked, so if a segment fails authentication the target may already
+     * hold the plaintext of other segments and must be discarded.
+     *
+     * @param source   the sealed channel
+     * @param target   the plaintext channel, open for reading and writing
+     * @param key      the key 256bit
+     * @param executor the executor running the tasks, e.g. a {@link ForkJoinPool}
+     * @throws IOException              if a channel can't be read or written, or a segment fails authentication
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static void decryptSegmented(FileChannel source, FileChannel target, SecretKey key, Executor executor)
+            throws IOException, GeneralSecurityException {
+        SegmentedFiles.decrypt(source, target, key, executor);
+    }
+
+    /**
+     * Compress and encrypt a InputStream with ChaCha20-Poly1305, 256KiB segments and the fastest deflate level, the
+     * segments are compressed and sealed on the common {@link ForkJoinPool}
+     * <p>
+     * Replaces a {@code GZIPOutputStream} in front of {@link #encrypt(InputStream, SecretKey, byte[])}: every segment is
+     * deflated on its own and sealed like {@link #encryptSegmented(InputStream, SecretKey)}, so the work is spread over
+     * the cores and there is only one stream stage. A segment which doesn't get smaller is stored. The header
+     * describes the algorithm, compression and segment size, decrypt with {@link #decryptCompressed(InputStream, SecretKey)}.
+     *
+     * @param data the data
+     * @param key  the key 256bit
+     * @return the input stream of the compressed sealed stream
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available
+     */
+    public static InputStream encryptCompressed(InputStream data, SecretKey key) throws GeneralSecurityException {
+        return encryptCompressed(
+                data, key, CompressedStream.DEFAULT_SEGMENT_SIZE, Deflater.BEST_SPEED, AeadAlgorithm.CHACHA20_POLY_1305,
+                ForkJoinPool.commonPool()
+        );
+    }
+
+    /**
+     * Compress and encrypt a InputStream, same as {@link #encryptCompressed(InputStream, SecretKey)}
+     *
+     * @param data        the data
+     * @param key         the key 256bit, of the key algorithm of {@code algorithm}
+     * @param segmentSize the plaintext size of a segment, between 1KiB and 16MiB
+     * @param level       the deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param algorithm   the algorithm
+     * @param executor    the executor compressing and sealing the segments, {@code Runnable::run} for the calling thread
+     * @return the input stream of the compressed sealed stream
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static InputStream encryptCompressed(
+            InputStream data, SecretKey key, int segmentSize, int level, AeadAlgorithm algorithm, Executor executor
+    ) throws GeneralSecurityException {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level " + level);
+        }
+        SegmentedStream.Header header = CompressedStream.newHeader(algorithm, segmentSize);
+        SegmentedStream.newCipher(header); // fail early if the algorithm is missing
+        return new CompressedStream.EncryptInputStream(data, key, header, level, executor, CompressedStream.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Decrypt and decompress a InputStream of {@link #encryptCompressed(InputStream, SecretKey)}, the segments are opened
+     * and inflated on the common {@link ForkJoinPool}
+     * <p>
+     * The header is read before this returns, the returned stream throws an {@link IOException} if a segment fails
+     * authentication or the stream is truncated.
+     *
+     * @param data the compressed sealed stream
+     * @param key  the key 256bit
+     * @return the input stream of the data
+     * @throws IOException              if the header can't be read or is invalid
+     * @throws GeneralSecurityException if the algorithm of the stream is not available
+     */
+    public static InputStream decryptCompressed(InputStream data, SecretKey key) throws IOException, GeneralSecurityException {
+        return decryptCompressed(data, key, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypt and decompress a InputStream, same as {@link #decryptCompressed(InputStream, SecretKey)}
+     *
+     * @param data     the compressed sealed stream
+     * @param key      the key 256bit
+     * @param executor the executor opening and inflating the segments, {@code Runnable::run} for the calling thread
+     * @return the input stream of the data
+     * @throws IOException              if the header can't be read or is invalid
+     * @throws GeneralSecurityException if the algorithm of the stream is not available
+     */
+    public static InputStream decryptCompressed(InputStream data, SecretKey key, Executor executor)
+            throws IOException, GeneralSecurityException {
+        SegmentedStream.Header header = CompressedStream.readHeader(data);
+        SegmentedStream.newCipher(header); // fail early if the algorithm is missing
+        return new CompressedStream.DecryptInputStream(data, key, header, executor, CompressedStream.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Encrypt a small message with ChaCha20-Poly1305 and a random nonce
+     * <p>
+     * The result is {@code nonce(12byte) || ciphertext || tag(16byte)}, decrypt it with {@link #decrypt(byte[], SecretKey)}.
+     * The cipher is cached per thread and re-initialized for every message, so this is cheap enough for many small
+     * messages per second. A random nonce is safe for about 2^32 messages per key.
+     *
+     * @param data the data
+     * @param key  the key 256bit
+     * @return the sealed message
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static byte[] encrypt(byte[] data, SecretKey key) throws GeneralSecurityException {
+        return encrypt(data, key, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt a small message with the given algorithm and a random nonce, same as {@link #encrypt(byte[], SecretKey)}
+     *
+     * @param data      the data
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param algorithm the algorithm
+     * @return the sealed message
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static byte[] encrypt(byte[] data, SecretKey key, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        return seal(algorithm, CipherCache.get(algorithm.getTransformation(), Cipher.ENCRYPT_MODE), data, key);
+    }
+
+    /**
+     * Decrypt a sealed message of {@link #encrypt(byte[], SecretKey)}
+     *
+     * @param sealed the sealed message
+     * @param key    the key 256bit
+     * @return the data
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static byte[] decrypt(byte[] sealed, SecretKey key) throws GeneralSecurityException {
+        return decrypt(sealed, key, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Decrypt a sealed message of {@link #encrypt(byte[], SecretKey, AeadAlgorithm)}
+     *
+     * @param sealed    the sealed message
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param algorithm the algorithm the message was sealed with
+     * @return the data
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static byte[] decrypt(byte[] sealed, SecretKey key, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        return open(algorithm, CipherCache.get(algorithm.getTransformation(), Cipher.DECRYPT_MODE), sealed, key);
+    }
+
+    /**
+     * Encrypt a batch of small messages, same as {@link #encrypt(byte[], SecretKey)} for every message
+     * <p>
+     * The cipher is looked up once for the batch and re-initialized per message.
+     *
+     * @param data the messages
+     * @param key  the key 256bit
+     * @return the sealed messages in the same order
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static List<byte[]> encryptAll(List<byte[]> data, SecretKey key) throws GeneralSecurityException {
+        return encryptAll(data, key, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt a batch of small messages with the given algorithm, same as {@link #encryptAll(List, SecretKey)}
+     *
+     * @param data      the messages
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param algorithm the algorithm
+     * @return the sealed messages in the same order
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static List<byte[]> encryptAll(List<byte[]> data, SecretKey key, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.ENCRYPT_MODE);
+        List<byte[]> sealed = new ArrayList<>(data.size());
+        for (byte[] message : data) {
+            sealed.add(seal(algorithm, cipher, message, key));
+        }
+        return sealed;
+    }
+
+    /**
+     * Decrypt a batch of sealed messages of {@link #encryptAll(List, SecretKey)}
+     *
+     * @param sealed the sealed messages
+     * @param key    the key 256bit
+     * @return the messages in the same order
+     * @throws AEADBadTagException      if a message is truncated or fails authentication
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static List<byte[]> decryptAll(List<byte[]> sealed, SecretKey key) throws GeneralSecurityException {
+        return decryptAll(sealed, key, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Decrypt a batch of sealed messages of {@link #encryptAll(List, SecretKey, AeadAlgorithm)}
+     *
+     * @param sealed    the sealed messages
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param algorithm the algorithm the messages were sealed with
+     * @return the messages in the same order
+     * @throws AEADBadTagException      if a message is truncated or fails authentication
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static List<byte[]> decryptAll(List<byte[]> sealed, SecretKey key, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.DECRYPT_MODE);
+        List<byte[]> data = new ArrayList<>(sealed.size());
+        for (byte[] message : sealed) {
+            data.add(open(algorithm, cipher, message, key));
+        }
+        return data;
+    }
+
+    /**
+     * Encrypt a message with ChaCha20-Poly1305 and a random nonce into a caller supplied buffer
+     * <p>
+     * {@code nonce(12byte) || ciphertext || tag(16byte)} is written to {@code out} at {@code outOff}, the same layout
+     * as {@link #encrypt(byte[], SecretKey)}, so hot paths can reuse their buffers. {@code out} needs
+     * {@link #sealedLength(int)} bytes from {@code outOff}, the input and output ranges must not overlap.
+     *
+     * @param in     the data
+     * @param inOff  the offset of the data
+     * @param inLen  the length of the data
+     * @param out    the output buffer
+     * @param outOff the offset in the output buffer
+     * @param key    the key 256bit
+     * @param aad    the associated data which is authenticated but not encrypted, may be null
+     * @return the number of bytes written to {@code out}
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static int encrypt(byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad)
+            throws GeneralSecurityException {
+        return encrypt(in, inOff, inLen, out, outOff, key, aad, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt a message with the given algorithm into a caller supplied buffer, same as
+     * {@link #encrypt(byte[], int, int, byte[], int, SecretKey, byte[])}
+     *
+     * @param in        the data
+     * @param inOff     the offset of the data
+     * @param inLen     the length of the data
+     * @param out       the output buffer
+     * @param outOff    the offset in the output buffer
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param aad       the associated data which is authenticated but not encrypted, may be null
+     * @param algorithm the algorithm
+     * @return the number of bytes written to {@code out}
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static int encrypt(
+            byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad, AeadAlgorithm algorithm
+    ) throws GeneralSecurityException {
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.ENCRYPT_MODE);
+        return seal(algorithm, cipher, in, inOff, inLen, out, outOff, key, aad);
+    }
+
+    /**
+     * Decrypt a sealed message of {@link #encrypt(byte[], int, int, byte[], int, SecretKey, byte[])} into a caller
+     * supplied buffer
+     * <p>
+     * {@code out} needs {@code inLen - 28} bytes from {@code outOff}, nothing is written if the message fails
+     * authentication.
+     *
+     * @param in     the sealed message
+     * @param inOff  the offset of the sealed message
+     * @param inLen  the length of the sealed message
+     * @param out    the output buffer
+     * @param outOff the offset in the output buffer
+     * @param key    the key 256bit
+     * @param aad    the associated data given to encrypt, may be null
+     * @return the number of bytes written to {@code out}
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static int decrypt(byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad)
+            throws GeneralSecurityException {
+        return decrypt(in, inOff, inLen, out, outOff, key, aad, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Decrypt a sealed message of {@link #encrypt(byte[], int, int, byte[], int, SecretKey, byte[], AeadAlgorithm)}
+     * into a caller supplied buffer
+     *
+     * @param in        the sealed message
+     * @param inOff     the offset of the sealed message
+     * @param inLen     the length of the sealed message
+     * @param out       the output buffer
+     * @param outOff    the offset in the output buffer
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param aad       the associated data given to encrypt, may be null
+     * @param algorithm the algorithm the message was sealed with
+     * @return the number of bytes written to {@code out}
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static int decrypt(
+            byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad, AeadAlgorithm algorithm
+    ) throws GeneralSecurityException {
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.DECRYPT_MODE);
+        return open(algorithm, cipher, in, inOff, inLen, out, outOff, key, aad);
+    }
+
+    /**
+     * Encrypt the remaining bytes of {@code in} into {@code out}, same as
+     * {@link #encrypt(byte[], int, int, byte[], int, SecretKey, byte[])}
+     * <p>
+     * Heap and direct buffers are both supported, the positions of all buffers are moved past the consumed and
+     * written bytes.
+     *
+     * @param in  the data
+     * @param out the output buffer
+     * @param key the key 256bit
+     * @param aad the associated data which is authenticated but not encrypted, may be null
+     * @return the number of bytes written to {@code out}
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static int encrypt(ByteBuffer in, ByteBuffer out, SecretKey key, @Nullable ByteBuffer aad) throws GeneralSecurityException {
+        return encrypt(in, out, key, aad, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Encrypt the remaining bytes of {@code in} into {@code out} with the given algorithm, same as
+     * {@link #encrypt(ByteBuffer, ByteBuffer, SecretKey, ByteBuffer)}
+     *
+     * @param in        the data
+     * @param out       the output buffer
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param aad       the associated data which is authenticated but not encrypted, may be null
+     * @param algorithm the algorithm
+     * @return the number of bytes written to {@code out}
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static int encrypt(ByteBuffer in, ByteBuffer out, SecretKey key, @Nullable ByteBuffer aad, AeadAlgorithm algorithm)
+            throws GeneralSecurityException {
+        if (out.remaining() < sealedLength(in.remaining())) {
+            throw new ShortBufferException("Output buffer too small, " + sealedLength(in.remaining()) + " bytes needed");
+        }
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.ENCRYPT_MODE);
+        byte[] nonce = NONCES.get();
+        RandomSource.nextBytes(nonce);
+        CipherCache.init(cipher, Cipher.ENCRYPT_MODE, key, algorithm.parameterSpec(nonce));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        out.put(nonce);
+        return NONCE_LENGTH + cipher.doFinal(in, out);
+    }
+
+    /**
+     * Decrypt the remaining bytes of {@code in} into {@code out}, same as
+     * {@link #decrypt(byte[], int, int, byte[], int, SecretKey, byte[])}
+     *
+     * @param in  the sealed message
+     * @param out the output buffer
+     * @param key the key 256bit
+     * @param aad the associated data given to encrypt, may be null
+     * @return the number of bytes written to {@code out}
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if ChaCha20-Poly1305 is not available or the key is invalid
+     */
+    public static int decrypt(ByteBuffer in, ByteBuffer out, SecretKey key, @Nullable ByteBuffer aad) throws GeneralSecurityException {
+        return decrypt(in, out, key, aad, AeadAlgorithm.CHACHA20_POLY_1305);
+    }
+
+    /**
+     * Decrypt the remaining bytes of {@code in} into {@code out} with the given algorithm, same as
+     * {@link #decrypt(ByteBuffer, ByteBuffer, SecretKey, ByteBuffer)}
+     *
+     * @param in        the sealed message
+     * @param out       the output buffer
+     * @param key       the key 256bit, of the key algorithm of {@code algorithm}
+     * @param aad       the associated data given to encrypt, may be null
+     * @param algorithm the algorithm the message was sealed with
+     * @return the number of bytes written to {@code out}
+     * @throws AEADBadTagException      if the message is truncated or fails authentication
+     * @throws ShortBufferException     if {@code out} is too small
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    public static int decrypt(ByteBuffer in, ByteBuffer out, SecretKey key, @Nullable ByteBuffer aad, AeadAlgorithm algorithm)
+            throws GeneralSecurityException {
+        if (in.remaining() < NONCE_LENGTH + TAG_LENGTH) {
+            throw new AEADBadTagException("Sealed message too short");
+        }
+        if (out.remaining() < in.remaining() - NONCE_LENGTH - TAG_LENGTH) {
+            throw new ShortBufferException("Output buffer too small, " + (in.remaining() - NONCE_LENGTH - TAG_LENGTH) + " bytes needed");
+        }
+        Cipher cipher = CipherCache.get(algorithm.getTransformation(), Cipher.DECRYPT_MODE);
+        byte[] nonce = NONCES.get();
+        in.get(nonce);
+        CipherCache.init(cipher, Cipher.DECRYPT_MODE, key, algorithm.parameterSpec(nonce));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return cipher.doFinal(in, out);
+    }
+
+    /**
+     * The length of a sealed message of {@link #encrypt(byte[], SecretKey)} for data of the given length
+     *
+     * @param dataLength the data length
+     * @return the sealed message length
+     */
+    public static int sealedLength(int dataLength) {
+        return NONCE_LENGTH + dataLength + TAG_LENGTH;
+    }
+
+    private static byte[] seal(AeadAlgorithm algorithm, Cipher cipher, byte[] data, SecretKey key) throws GeneralSecurityException {
+        byte[] sealed = new byte[sealedLength(data.length)];
+        seal(algorithm, cipher, data, 0, data.length, sealed, 0, key, null);
+        return sealed;
+    }
+
+    private static byte[] open(AeadAlgorithm algorithm, Cipher cipher, byte[] sealed, SecretKey key) throws GeneralSecurityException {
+        if (sealed.length < NONCE_LENGTH + TAG_LENGTH) {
+            throw new AEADBadTagException("Sealed message too short");
+        }
+        byte[] data = new byte[sealed.length - NONCE_LENGTH - TAG_LENGTH];
+        open(algorithm, cipher, sealed, 0, sealed.length, data, 0, key, null);
+        return data;
+    }
+
+    private static int seal(
+            AeadAlgorithm algorithm, Cipher cipher, byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad
+    ) throws GeneralSecurityException {
+        if (out.length - outOff < sealedLength(inLen)) {
+            throw new ShortBufferException("Output buffer too small, " + sealedLength(inLen) + " bytes needed");
+        }
+        byte[] nonce = NONCES.get();
+        RandomSource.nextBytes(nonce);
+        CipherCache.init(cipher, Cipher.ENCRYPT_MODE, key, algorithm.parameterSpec(nonce));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        System.arraycopy(nonce, 0, out, outOff, NONCE_LENGTH);
+        return NONCE_LENGTH + cipher.doFinal(in, inOff, inLen, out, outOff + NONCE_LENGTH);
+    }
+
+    private static int open(
+            AeadAlgorithm algorithm, Cipher cipher, byte[] in, int inOff, int inLen, byte[] out, int outOff, SecretKey key, @Nullable byte[] aad
+    ) throws GeneralSecurityException {
+        if (inLen < NONCE_LENGTH + TAG_LENGTH) {
+            throw new AEADBadTagException("Sealed message too short");
+        }
+        if (out.length - outOff < inLen - NONCE_LENGTH - TAG_LENGTH) {
+            throw new ShortBufferException("Output buffer too small, " + (inLen - NONCE_LENGTH - TAG_LENGTH) + " bytes needed");
+        }
+        CipherCache.init(cipher, Cipher.DECRYPT_MODE, key, algorithm.parameterSpec(in, inOff, NONCE_LENGTH));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return cipher.doFinal(in, inOff + NONCE_LENGTH, inLen - NONCE_LENGTH, out, outOff);
+    }
+
+    private static InputStream crypt(InputStream data, SecretKey key, byte[] nonce, AeadAlgorithm alg, int opMode) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        Cipher cipher = Cipher.getInstance(alg.getTransformation());
+        cipher.init(opMode, key, alg.parameterSpec(nonce));
         return new CipherInputStream(data, cipher);
     }
 
+    /**
+     * Derive a key from a random secret with HKDF-SHA256, see {@link KeyDerivation#hkdf(byte[], byte[], byte[], int)}
+     * <p>
+     * The derived keys are cached for 10 minutes by a fingerprint of the secret and the parameters, so the returned
+     * key can be looked up again on every call instead of kept by the caller.
+     *
+     * @param secret    the secret, must have enough entropy already, e.g. a master key
+     * @param salt      the salt, may be null or empty
+     * @param info      the context of the derived key, e.g. its purpose, may be null or empty
+     * @param algorithm the algorithm the key is for
+     * @return the key
+     * @throws GeneralSecurityException if HmacSHA256 is not available
+     */
+    public static SecretKey deriveKey(byte[] secret, @Nullable byte[] salt, @Nullable byte[] info, AeadAlgorithm algorithm)
+            throws GeneralSecurityException {
+        String context = "hkdf-sha256:" + enHex(salt == null ? new byte[0] : salt) + ":"
+                + enHex(info == null ? new byte[0] : info) + ":" + algorithm;
+        return DERIVED_KEYS.get(secret, context, () -> KeyDerivation.hkdf(secret, salt, info, algorithm));
+    }
+
+    /**
+     * Derive a key from a password with PBKDF2-HMAC-SHA256 and {@link KeyDerivation#PBKDF2_ITERATIONS}, the replacement
+     * of {@link #generateKey(String)}
+     * <p>
+     * The derivation is slow on purpose, the derived keys are cached for 10 minutes like
+     * {@link #deriveKey(byte[], byte[], byte[], AeadAlgorithm)}.
+     *
+     * @param password  the password
+     * @param salt      the salt, 16 random bytes stored along the data
+     * @param algorithm the algorithm the key is for
+     * @return the key
+     * @throws GeneralSecurityException if PBKDF2WithHmacSHA256 is not available
+     */
+    public static SecretKey deriveKey(char[] password, byte[] salt, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        byte[] secret = PemUtils.toUtf8Bytes(password);
+        try {
+            String context = "pbkdf2-sha256:" + KeyDerivation.PBKDF2_ITERATIONS + ":" + enHex(salt) + ":" + algorithm;
+            return DERIVED_KEYS.get(secret, context, () -> KeyDerivation.pbkdf2(password, salt, algorithm));
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
     /**
      * Generate key with given string.
      * <p>
@@ -146,6 +1070,9 @@ public class CryptoUtils {
      * byte array level,  and encode the byte array to a hex string in the end for human reading convince.
      * <p>
      * pass {@code ->} padding with space: pass+ " "*32 {@code ->} trim pass.getByte().trim(256bit) {@code ->} encode hex string
+     * <p>
+     * This is not a key derivation, the key is as weak as the string. Use {@link #deriveKey(char[], byte[], AeadAlgorithm)}
+     * for passwords and {@link #deriveKey(byte[], byte[], byte[], AeadAlgorithm)} for random secrets.
      *
      * @param pass the pass
      * @return the string
@@ -192,6 +1119,19 @@ public class CryptoUtils {
         return enHex(key.getEncoded());
     }
 
+    /**
+     * Generate random key for the given algorithm and return key as hex encoded string
+     *
+     * @param algorithm the algorithm
+     * @return the key with hex encoded
+     * @throws NoSuchAlgorithmException the no such algorithm exception
+     */
+    public static String generateRandomKey(AeadAlgorithm algorithm) throws NoSuchAlgorithmException {
+        KeyGenerator instance = KeyGenerator.getInstance(algorithm.getKeyAlgorithm());
+        instance.init(256);
+        return enHex(instance.generateKey().getEncoded());
+    }
+
     /**
      * Encode a byte array to hex string.
      *
@@ -199,7 +1139,7 @@ public class CryptoUtils {
      * @return the string
      */
     public static String enHex(byte[] binary) {
-        return Hex.encodeHexString(binary);
+        return HexCodec.encode(binary);
     }
 
     /**
@@ -210,6 +1150,10 @@ public class CryptoUtils {
      * @throws DecoderException the decoder exception
      */
     public static byte[] deHex(String hexString) throws DecoderException {
-        return Hex.decodeHex(hexString);
+        try {
+            return HexCodec.decode(hexString);
+        } catch (IllegalArgumentException e) {
+            throw new DecoderException(e.getMessage(), e);
+        }
     }
 }
@@ -17,15 +17,21 @@
 
 package io.github.yangyaofei.crypto;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * A bare-minimum ASN.1 DER decoder, just having enough functions to
  * decode PKCS#1 private keys in order to remain JCE/JVM agnostic.
  * <p>
+ * The parser is a cursor over a shared byte array: an {@link Asn1Object} is an offset and length into that array, and
+ * the parser of a constructed object is a cursor over the same bytes, so nothing is copied while walking the
+ * structure. {@link Asn1Object#getValue()} hands out a copy when one is needed.
+ * <p>
  * Based on <a href="https://github.com/groovenauts/jmeter_oauth_plugin/blob/master/jmeter/src/main/java/org/apache/jmeter/protocol/oauth/sampler/PrivateKeyReader.java">...</a>
  */
 class DerParser {
@@ -33,8 +39,8 @@ class DerParser {
     private static final int CONSTRUCTED = 0x20;
 
     // Tag and data types
-    private static final int INTEGER = 0x02;
-    private static final int OCTET_STRING = 0x04;
+    static final int INTEGER = 0x02;
+    static final int OCTET_STRING = 0x04;
     static final int OBJECT_OID = 0x06;
     static final int SEQUENCE = 0x10;
     private static final int NUMERIC_STRING = 0x12;
@@ -49,12 +55,52 @@ class DerParser {
     private static final int UNIVERSAL_STRING = 0x1C;
     private static final int BMP_STRING = 0x1E;
 
-    private final InputStream derInputStream;
-    private final int maxAsnObjectLength;
+    private final byte[] data;
+    private final int limit;
+    private int position;
 
     DerParser(byte[] bytes) {
-        this.derInputStream = new ByteArrayInputStream(bytes);
-        this.maxAsnObjectLength = bytes.length;
+        this(bytes, 0, bytes.length);
+    }
+
+    DerParser(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + bytes.length);
+        }
+        this.data = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * A parser of the remaining bytes of a buffer, without copying them if the buffer has an accessible array. The
+     * position of the buffer is not moved.
+     */
+    DerParser(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.data = buffer.array();
+            this.position = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.data = new byte[buffer.remaining()];
+            buffer.duplicate().get(this.data);
+            this.position = 0;
+            this.limit = data.length;
+        }
+    }
+
+    /**
+     * If there are more objects to read.
+     */
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * The offset of the next object in the shared input, e.g. to verify a signature over the encoding of an object.
+     */
+    int position() {
+        return position;
     }
 
     Asn1Object readAsn1Object(int requiredType) throws IOException {
@@ -68,27 +114,21 @@ class DerParser {
     }
 
     Asn1Object readAsn1Object() throws IOException {
-        int tag = derInputStream.read();
-        if (tag == -1) {
+        if (position >= limit) {
             throw new IOException("Invalid DER: stream too short, missing tag");
         }
+        int tag = data[position++] & 0xFF;
         int length = getLength();
-        // getLength() can return any 32 bit integer, so ensure that a corrupted encoding won't
-        // force us into allocating a very large array
-        if (length > maxAsnObjectLength) {
+        // getLength() can return any 31 bit integer, so ensure that a corrupted encoding won't
+        // point us past the end of the input
+        if (length > limit - position) {
             throw new IOException(
-                    "Invalid DER: size of ASN.1 object to be parsed appears to be larger than the size of the key file " + "itself."
+                    "Invalid DER: stream too short, missing value. " + "Could only read " + (limit - position) + " out of " + length + " bytes"
             );
         }
-        byte[] value = new byte[length];
-        int n = derInputStream.read(value);
-        if (n < length) {
-            throw new IOException(
-                    "Invalid DER: stream too short, missing value. " + "Could only read " + n + " out of " + length + " bytes"
-            );
-        }
-        return new Asn1Object(tag, length, value);
-
+        Asn1Object obj = new Asn1Object(tag, length, data, position);
+        position += length;
+        return obj;
     }
 
     /**
@@ -111,9 +151,8 @@ class DerParser {
      * @return The length as integer
      */
     private int getLength() throws IOException {
-
-        int i = derInputStream.read();
-        if (i == -1) throw new IOException("Invalid DER: length missing");
+        if (position >= limit) throw new IOException("Invalid DER: length missing");
+        int i = data[position++] & 0xFF;
 
         // A single byte short length
         if ((i & ~0x7F) == 0) return i;
@@ -122,12 +161,14 @@ class DerParser {
 
         // We can't handle length longer than 4 bytes
         if (i >= 0xFF || num > 4) throw new IOException("Invalid DER: length field too big (" + i + ")"); //$NON-NLS-2$
+        if (num > limit - position) throw new IOException("Invalid DER: length too short");
 
-        byte[] bytes = new byte[num];
-        int n = derInputStream.read(bytes);
-        if (n < num) throw new IOException("Invalid DER: length too short");
-
-        return new BigInteger(1, bytes).intValue();
+        int length = 0;
+        for (int j = 0; j < num; j++) {
+            length = length << 8 | data[position++] & 0xFF;
+        }
+        if (length < 0) throw new IOException("Invalid DER: length field too big (" + Integer.toUnsignedString(length) + ")");
+        return length;
     }
 
     /**
@@ -140,8 +181,9 @@ class DerParser {
 
         protected final int type;
         protected final int length;
-        protected final byte[] value;
         protected final int tag;
+        private final byte[] data;
+        private final int offset;
 
         /**
          * Construct a ASN.1 TLV. The TLV could be either a
@@ -166,13 +208,15 @@ class DerParser {
          *
          * @param tag    Tag or Identifier
          * @param length Length of the field
-         * @param value  Encoded octet string for the field.
+         * @param data   The shared input, the encoded octet string for the field is at {@code offset}
+         * @param offset Offset of the value in {@code data}
          */
-        Asn1Object(int tag, int length, byte[] value) {
+        Asn1Object(int tag, int length, byte[] data, int offset) {
             this.tag = tag;
             this.type = tag & 0x1F;
             this.length = length;
-            this.value = value;
+            this.data = data;
+            this.offset = offset;
         }
 
         public int getType() {
@@ -183,8 +227,22 @@ class DerParser {
             return length;
         }
 
+        /**
+         * Get a copy of the value.
+         *
+         * @return the encoded octet string for the field
+         */
         public byte[] getValue() {
-            return value;
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        /**
+         * Get a read only view of the value, without copying it.
+         *
+         * @return the encoded octet string for the field
+         */
+        public ByteBuffer getValueBuffer() {
+            return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
         }
 
         public boolean isConstructed() {
@@ -201,7 +259,17 @@ class DerParser {
                 throw new IOException("Invalid DER: can't parse primitive entity"); //$NON-NLS-1$
             }
 
-            return new DerParser(value);
+            return new DerParser(data, offset, length);
+        }
+
+        /**
+         * For a primitive field which encapsulates DER, like the OCTET STRING of the key in PKCS#8 or of an X.509
+         * extension, return a parser for its value.
+         *
+         * @return A parser for the encapsulated DER.
+         */
+        public DerParser getEncapsulatedParser() {
+            return new DerParser(data, offset, length);
         }
 
         /**
@@ -211,68 +279,56 @@ class DerParser {
          */
         public BigInteger getInteger() throws IOException {
             if (type != DerParser.INTEGER) throw new IOException("Invalid DER: object is not integer"); //$NON-NLS-1$
+            if (length == 0) throw new IOException("Invalid DER: integer is empty"); //$NON-NLS-1$
 
-            return new BigInteger(value);
-        }
-
-        private String toHexString(byte[] bytes) {
-            StringBuilder hexString = new StringBuilder();
-            for (Byte aByte : bytes) {
-                hexString.append(Integer.toHexString(aByte));
-            }
-            return hexString.toString();
-
+            return new BigInteger(data, offset, length);
         }
 
         public String getString() throws IOException {
 
-            String encoding;
+            Charset encoding;
 
             switch (type) {
                 case DerParser.OCTET_STRING -> {
                     // octet string is basically a byte array
-                    return this.toHexString(value);
+                    return HexCodec.encode(data, offset, length);
                 }
                 case DerParser.NUMERIC_STRING, DerParser.PRINTABLE_STRING, DerParser.VIDEOTEX_STRING, DerParser.IA5_STRING, DerParser.GRAPHIC_STRING, DerParser.ISO646_STRING, DerParser.GENERAL_STRING ->
-                        encoding = "ISO-8859-1"; //$NON-NLS-1$
-                case DerParser.BMP_STRING -> encoding = "UTF-16BE"; //$NON-NLS-1$
-                case DerParser.UTF8_STRING -> encoding = "UTF-8"; //$NON-NLS-1$
+                        encoding = StandardCharsets.ISO_8859_1;
+                case DerParser.BMP_STRING -> encoding = StandardCharsets.UTF_16BE;
+                case DerParser.UTF8_STRING -> encoding = StandardCharsets.UTF_8;
                 case DerParser.UNIVERSAL_STRING ->
                         throw new IOException("Invalid DER: can't handle UCS-4 string"); //$NON-NLS-1$
                 default -> throw new IOException("Invalid DER: object is not a string"); //$NON-NLS-1$
             }
 
-            return new String(value, encoding);
+            return new String(data, offset, length, encoding);
         }
 
         public String getOid() throws IOException {
+            return getObjectIdentifier().toString();
+        }
 
+        /**
+         * Get the value as OID, interned, so known OIDs are found without allocating.
+         *
+         * @return the OID
+         */
+        public Oid getObjectIdentifier() throws IOException {
             if (type != DerParser.OBJECT_OID) {
                 throw new IOException("Ivalid DER: object is not object OID");
             }
-            StringBuilder sb = new StringBuilder(64);
-            switch (value[0] / 40) {
-                case 0 -> sb.append('0');
-                case 1 -> {
-                    sb.append('1');
-                    value[0] -= 40;
-                }
-                default -> {
-                    sb.append('2');
-                    value[0] -= 80;
-                }
-            }
-            int oidPart = 0;
-            for (int i = 0; i < length; i++) {
-                oidPart = (oidPart << 7) + (value[i] & 0x7F);
-                if ((value[i] & 0x80) == 0) {
-                    sb.append('.');
-                    sb.append(oidPart);
-                    oidPart = 0;
-                }
-            }
+            return Oid.decode(data, offset, length);
+        }
 
-            return sb.toString();
+        /**
+         * If the field is the given OID, comparing the encoded bytes without decoding them.
+         *
+         * @param oid the OID
+         * @return if the field is an OID and equal to {@code oid}
+         */
+        public boolean isOid(Oid oid) {
+            return type == DerParser.OBJECT_OID && oid.matches(data, offset, length);
         }
     }
 }
@@ -0,0 +1,171 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of derived {@link SecretKey}s which expire a fixed time after derivation.
+ * <p>
+ * Entries are keyed by a fingerprint of the secret and the derivation context, the secret itself is not kept. The
+ * fingerprint is an HMAC-SHA256 with a random key of this process, so it can't be used to test password guesses if
+ * the heap leaks. When full, the least recently used entry is dropped.
+ * <p>
+ * The derivation runs outside the lock, two threads missing on the same secret at once both derive it.
+ */
+@SuppressWarnings("unused")
+public final class DerivedKeyCache {
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final SecretKeySpec FINGERPRINT_KEY;
+    private static final ThreadLocal<Mac> FINGERPRINT_MACS = ThreadLocal.withInitial(DerivedKeyCache::newFingerprintMac);
+
+    static {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        FINGERPRINT_KEY = new SecretKeySpec(key, HMAC_SHA256);
+    }
+
+    private final int maximumSize;
+    private final long expireNanos;
+    private final LinkedHashMap<Fingerprint, Entry> entries;
+
+    /**
+     * Derive a key, called on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Deriver {
+        SecretKey derive() throws GeneralSecurityException;
+    }
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param maximumSize       the maximum number of keys
+     * @param expireAfterDerive the time a key is kept after its derivation
+     */
+    public DerivedKeyCache(int maximumSize, Duration expireAfterDerive) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.expireNanos = expireAfterDerive.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, Entry> eldest) {
+                return size() > DerivedKeyCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Get the key derived from the secret in the context, derive and cache it if missing or expired.
+     *
+     * @param secret  the secret, e.g. a password as UTF-8 or a master key
+     * @param context everything else the derivation depends on, e.g. KDF, parameters, salt, info and algorithm
+     * @param deriver derive the key on a miss
+     * @return the key
+     * @throws GeneralSecurityException if the derivation fails
+     */
+    public SecretKey get(byte[] secret, String context, Deriver deriver) throws GeneralSecurityException {
+        Fingerprint fingerprint = fingerprint(secret, context);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(fingerprint);
+            if (entry != null) {
+                if (now - entry.derivedAt < expireNanos) {
+                    return entry.key;
+                }
+                entries.remove(fingerprint);
+            }
+        }
+        SecretKey key = deriver.derive();
+        synchronized (entries) {
+            entries.put(fingerprint, new Entry(key, now));
+        }
+        return key;
+    }
+
+    /**
+     * Drop the key of the secret in the context, e.g. after a password change.
+     *
+     * @param secret  the secret
+     * @param context the context given to {@link #get(byte[], String, Deriver)}
+     */
+    public void invalidate(byte[] secret, String context) {
+        Fingerprint fingerprint = fingerprint(secret, context);
+        synchronized (entries) {
+            entries.remove(fingerprint);
+        }
+    }
+
+    /**
+     * Drop all keys.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * The number of cached keys, expired ones included until they are looked up or pushed out.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static Fingerprint fingerprint(byte[] secret, String context) {
+        Mac mac = FINGERPRINT_MACS.get();
+        byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        // length prefix, so context and secret can't shift into each other
+        mac.update((byte) (contextBytes.length >>> 24));
+        mac.update((byte) (contextBytes.length >>> 16));
+        mac.update((byte) (contextBytes.length >>> 8));
+        mac.update((byte) contextBytes.length);
+        mac.update(contextBytes);
+        return new Fingerprint(mac.doFinal(secret));
+    }
+
+    private static Mac newFingerprintMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(FINGERPRINT_KEY);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private record Entry(SecretKey key, long derivedAt) {
+    }
+
+    private record Fingerprint(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint other && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return "Fingerprint";
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Envelope encryption: every object is encrypted with its own random data key, and the data key is stored in the
+ * header of the object, wrapped (encrypted) by a master key.
+ * <p>
+ * The envelope is a header followed by the payload:
+ * <pre>
+ * | version 1B | algorithm 1B | format 1B | master key id length 1B | master key id | wrapped data key 60B | payload |
+ * </pre>
+ * The wrapped data key is {@code nonce || key || tag} sealed with the fields before it as associated data, by a wrapping
+ * key derived from the master key per algorithm with HKDF, so a master key is never used by two algorithms. The payload is a message of {@link CryptoUtils#encrypt(byte[], SecretKey, AeadAlgorithm)} for
+ * {@link #encrypt(byte[])}, or a segmented stream of {@link CryptoUtils#encryptSegmented(InputStream, SecretKey)} for
+ * {@link #encrypt(InputStream)}.
+ * <p>
+ * Unwrapped data keys are kept in a bounded LRU cache, so reading a hot object again skips the unwrap. New data keys
+ * are not cached, writes don't push out the keys of the objects being read. Rotating the
+ * master key only rewraps the data keys, see {@link #rewrap(byte[])}, the payload is copied as is.
+ */
+@SuppressWarnings("unused")
+public final class EnvelopeCrypto {
+    private static final byte VERSION = 1;
+    private static final byte FORMAT_MESSAGE = 1;
+    private static final byte FORMAT_SEGMENTED = 2;
+    private static final int KEY_LENGTH = 32;
+    private static final int WRAPPED_KEY_LENGTH = CryptoUtils.sealedLength(KEY_LENGTH);
+    private static final int FIXED_LENGTH = 4;
+    private static final int PAYLOAD_AAD_LENGTH = 3;
+
+    private final AeadAlgorithm algorithm;
+    // the wrapping keys per master key id, derived from the master key per algorithm
+    private final Map<String, Map<AeadAlgorithm, SecretKey>> masterKeys = new ConcurrentHashMap<>();
+    private final LinkedHashMap<WrappedKey, SecretKey> dataKeys;
+    private volatile String currentKeyId;
+
+    /**
+     * Instantiates a new envelope encryption with a cache of 1024 data keys.
+     *
+     * @param masterKeyId the id of the master key, stored in the header, at most 255 bytes as UTF-8
+     * @param masterKey   the master key, 256bit
+     * @param algorithm   the algorithm of the data keys and of the wrapping
+     */
+    public EnvelopeCrypto(String masterKeyId, SecretKey masterKey, AeadAlgorithm algorithm) {
+        this(masterKeyId, masterKey, algorithm, 1024);
+    }
+
+    /**
+     * Instantiates a new envelope encryption.
+     *
+     * @param masterKeyId the id of the master key, stored in the header, at most 255 bytes as UTF-8
+     * @param masterKey   the master key, 256bit
+     * @param algorithm   the algorithm of the data keys and of the wrapping
+     * @param cacheSize   the maximum number of unwrapped data keys kept
+     */
+    public EnvelopeCrypto(String masterKeyId, SecretKey masterKey, AeadAlgorithm algorithm, int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size " + cacheSize);
+        }
+        this.algorithm = algorithm;
+        this.dataKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WrappedKey, SecretKey> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        rotate(masterKeyId, masterKey);
+    }
+
+    /**
+     * Add a master key which is only used to unwrap, e.g. the old key while objects are rewrapped.
+     *
+     * @param masterKeyId the id of the master key
+     * @param masterKey   the master key
+     */
+    public void addMasterKey(String masterKeyId, SecretKey masterKey) {
+        checkKeyId(masterKeyId);
+        Map<AeadAlgorithm, SecretKey> wrappingKeys = new EnumMap<>(AeadAlgorithm.class);
+        byte[] secret = masterKey.getEncoded();
+        try {
+            for (AeadAlgorithm wrapAlgorithm : AeadAlgorithm.values()) {
+                byte[] info = ("envelope-wrap:" + wrapAlgorithm).getBytes(StandardCharsets.UTF_8);
+                wrappingKeys.put(wrapAlgorithm, KeyDerivation.hkdf(secret, null, info, wrapAlgorithm));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+        masterKeys.put(masterKeyId, wrappingKeys);
+    }
+
+    /**
+     * Make a new master key the one which wraps new data keys, the old master keys are kept to unwrap.
+     *
+     * @param masterKeyId the id of the new master key
+     * @param masterKey   the new master key
+     */
+    public void rotate(String masterKeyId, SecretKey masterKey) {
+        addMasterKey(masterKeyId, masterKey);
+        currentKeyId = masterKeyId;
+    }
+
+    /**
+     * Remove a master key after all objects are rewrapped, its cached data keys are dropped.
+     *
+     * @param masterKeyId the id of the master key
+     */
+    public void removeMasterKey(String masterKeyId) {
+        if (masterKeyId.equals(currentKeyId)) {
+            throw new IllegalStateException("The current master key " + masterKeyId + " can't be removed");
+        }
+        masterKeys.remove(masterKeyId);
+        synchronized (dataKeys) {
+            dataKeys.keySet().removeIf(wrappedKey -> wrappedKey.masterKeyId.equals(masterKeyId));
+        }
+    }
+
+    /**
+     * Encrypt an object with a new data key.
+     *
+     * @param data the object
+     * @return the envelope
+     * @throws GeneralSecurityException if the algorithm is not available or the master key is invalid
+     */
+    public byte[] encrypt(byte[] data) throws GeneralSecurityException {
+        SecretKey dataKey = newDataKey();
+        byte[] header = header(FORMAT_MESSAGE, dataKey, algorithm);
+        byte[] envelope = Arrays.copyOf(header, header.length + CryptoUtils.sealedLength(data.length));
+        CryptoUtils.encrypt(
+                data, 0, data.length, envelope, header.length, dataKey, Arrays.copyOf(header, PAYLOAD_AAD_LENGTH), algorithm
+        );
+        return envelope;
+    }
+
+    /**
+     * Decrypt an envelope of {@link #encrypt(byte[])}.
+     *
+     * @param envelope the envelope
+     * @return the object
+     * @throws AEADBadTagException      if the envelope is malformed or fails authentication
+     * @throws InvalidKeyException      if the master key of the envelope is unknown
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public byte[] decrypt(byte[] envelope) throws GeneralSecurityException {
+        Header header = Header.parse(envelope);
+        if (header.format != FORMAT_MESSAGE) {
+            throw new AEADBadTagException("Invalid envelope: not a message envelope");
+        }
+        SecretKey dataKey = unwrap(header, true);
+        int payloadLength = envelope.length - header.length;
+        if (payloadLength < CryptoUtils.sealedLength(0)) {
+            throw new AEADBadTagException("Invalid envelope: payload too short");
+        }
+        byte[] data = new byte[payloadLength - CryptoUtils.sealedLength(0)];
+        CryptoUtils.decrypt(
+                envelope, header.length, payloadLength, data, 0, dataKey, Arrays.copyOf(envelope, PAYLOAD_AAD_LENGTH),
+                header.algorithm
+        );
+        return data;
+    }
+
+    /**
+     * Encrypt a stream with a new data key, the payload is a segmented stream, see
+     * {@link CryptoUtils#encryptSegmented(InputStream, SecretKey)}.
+     *
+     * @param data the data
+     * @return the input stream of the envelope
+     * @throws GeneralSecurityException if the algorithm is not available or the master key is invalid
+     */
+    public InputStream encrypt(InputStream data) throws GeneralSecurityException {
+        SecretKey dataKey = newDataKey();
+        byte[] header = header(FORMAT_SEGMENTED, dataKey, algorithm);
+        InputStream payload = CryptoUtils.encryptSegmented(data, dataKey, SegmentedStream.DEFAULT_SEGMENT_SIZE, algorithm);
+        return new SequenceInputStream(new ByteArrayInputStream(header), payload);
+    }
+
+    /**
+     * Decrypt an envelope of {@link #encrypt(InputStream)}, the header is read before this returns.
+     *
+     * @param envelope the envelope
+     * @return the input stream of the data, throws an {@link IOException} on read if the payload fails authentication
+     * @throws IOException              if the header can't be read or is malformed
+     * @throws InvalidKeyException      if the master key of the envelope is unknown
+     * @throws GeneralSecurityException if the data key fails authentication or the algorithm is not available
+     */
+    public InputStream decrypt(InputStream envelope) throws IOException, GeneralSecurityException {
+        Header header = Header.parse(readHeader(envelope));
+        if (header.format != FORMAT_SEGMENTED) {
+            throw new IOException("Invalid envelope: not a stream envelope");
+        }
+        return CryptoUtils.decryptSegmented(envelope, unwrap(header, true));
+    }
+
+    /**
+     * Rewrap the data key of an envelope with the current master key, the payload is copied as is.
+     * <p>
+     * The envelope keeps its algorithm, which may differ from the algorithm of this instance.
+     *
+     * @param envelope the envelope
+     * @return the rewrapped envelope, the same object if it's wrapped with the current master key already
+     * @throws AEADBadTagException      if the header is malformed or fails authentication
+     * @throws InvalidKeyException      if the master key of the envelope is unknown
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public byte[] rewrap(byte[] envelope) throws GeneralSecurityException {
+        Header header = Header.parse(envelope);
+        if (header.masterKeyId.equals(currentKeyId)) {
+            return envelope;
+        }
+        byte[] rewrapped = header(header.format, unwrap(header, false), header.algorithm);
+        byte[] result = Arrays.copyOf(rewrapped, rewrapped.length + envelope.length - header.length);
+        System.arraycopy(envelope, header.length, result, rewrapped.length, envelope.length - header.length);
+        return result;
+    }
+
+    /**
+     * Rewrap the data key of an envelope with the current master key, the payload is copied as is without decryption.
+     * Works for both formats.
+     *
+     * @param envelope the envelope
+     * @param target   the target of the rewrapped envelope
+     * @throws IOException              if the envelope can't be read or the target can't be written
+     * @throws InvalidKeyException      if the master key of the envelope is unknown
+     * @throws GeneralSecurityException if the header fails authentication or the algorithm is not available
+     */
+    public void rewrap(InputStream envelope, OutputStream target) throws IOException, GeneralSecurityException {
+        Header header = Header.parse(readHeader(envelope));
+        target.write(header(header.format, unwrap(header, false), header.algorithm));
+        envelope.transferTo(target);
+    }
+
+    /**
+     * The id of the master key the envelope is wrapped with, e.g. to find the objects to rewrap.
+     *
+     * @param envelope the envelope, or at least its header
+     * @return the id of the master key
+     * @throws AEADBadTagException if the header is malformed
+     */
+    public static String masterKeyId(byte[] envelope) throws AEADBadTagException {
+        return Header.parse(envelope).masterKeyId;
+    }
+
+    private SecretKey newDataKey() {
+        byte[] bytes = new byte[KEY_LENGTH];
+        RandomSource.nextBytes(bytes);
+        SecretKey dataKey = new SecretKeySpec(bytes, algorithm.getKeyAlgorithm());
+        Arrays.fill(bytes, (byte) 0);
+        return dataKey;
+    }
+
+    /**
+     * The header of a data key wrapped with the current master key, by the algorithm of the payload.
+     */
+    private byte[] header(byte format, SecretKey dataKey, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        String keyId = currentKeyId;
+        SecretKey wrappingKey = masterKeys.get(keyId).get(algorithm);
+        byte[] id = keyId.getBytes(StandardCharsets.UTF_8);
+        int wrapOffset = FIXED_LENGTH + id.length;
+        byte[] header = new byte[wrapOffset + WRAPPED_KEY_LENGTH];
+        header[0] = VERSION;
+        header[1] = algorithm.id();
+        header[2] = format;
+        header[3] = (byte) id.length;
+        System.arraycopy(id, 0, header, FIXED_LENGTH, id.length);
+        byte[] keyBytes = dataKey.getEncoded();
+        try {
+            CryptoUtils.encrypt(
+                    keyBytes, 0, KEY_LENGTH, header, wrapOffset, wrappingKey, Arrays.copyOf(header, wrapOffset), algorithm
+            );
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+        return header;
+    }
+
+    /**
+     * Unwrap the data key of a header, from the cache if it's there.
+     *
+     * @param cache if an unwrapped key is cached, not for a rewrap, which doesn't read the object
+     */
+    private SecretKey unwrap(Header header, boolean cache) throws GeneralSecurityException {
+        WrappedKey wrappedKey = new WrappedKey(header.masterKeyId, header.wrapped);
+        synchronized (dataKeys) {
+            SecretKey dataKey = dataKeys.get(wrappedKey);
+            if (dataKey != null) {
+                return dataKey;
+            }
+        }
+        Map<AeadAlgorithm, SecretKey> wrappingKeys = masterKeys.get(header.masterKeyId);
+        if (wrappingKeys == null) {
+            throw new InvalidKeyException("Unknown master key " + header.masterKeyId);
+        }
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        try {
+            CryptoUtils.decrypt(
+                    header.wrapped, 0, WRAPPED_KEY_LENGTH, keyBytes, 0, wrappingKeys.get(header.algorithm),
+                    header.associatedData, header.algorithm
+            );
+            SecretKey dataKey = new SecretKeySpec(keyBytes, header.algorithm.getKeyAlgorithm());
+            if (cache) {
+                synchronized (dataKeys) {
+                    dataKeys.put(wrappedKey, dataKey);
+                }
+            }
+            return dataKey;
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    private static byte[] readHeader(InputStream envelope) throws IOException {
+        byte[] fixed = envelope.readNBytes(FIXED_LENGTH);
+        if (fixed.length < FIXED_LENGTH) {
+            throw new IOException("Invalid envelope: header too short");
+        }
+        byte[] rest = envelope.readNBytes((fixed[3] & 0xFF) + WRAPPED_KEY_LENGTH);
+        if (rest.length < (fixed[3] & 0xFF) + WRAPPED_KEY_LENGTH) {
+            throw new IOException("Invalid envelope: header too short");
+        }
+        byte[] header = Arrays.copyOf(fixed, FIXED_LENGTH + rest.length);
+        System.arraycopy(rest, 0, header, FIXED_LENGTH, rest.length);
+        return header;
+    }
+
+    private static void checkKeyId(String masterKeyId) {
+        if (masterKeyId.getBytes(StandardCharsets.UTF_8).length > 255) {
+            throw new IllegalArgumentException("Master key id longer than 255 bytes: " + masterKeyId);
+        }
+    }
+
+    private record Header(AeadAlgorithm algorithm, byte format, String masterKeyId, byte[] associatedData, byte[] wrapped,
+                          int length) {
+        static Header parse(byte[] envelope) throws AEADBadTagException {
+            if (envelope.length < FIXED_LENGTH || envelope[0] != VERSION) {
+                throw new AEADBadTagException("Invalid envelope: unsupported version");
+            }
+            int idLength = envelope[3] & 0xFF;
+            int wrapOffset = FIXED_LENGTH + idLength;
+            if (envelope.length < wrapOffset + WRAPPED_KEY_LENGTH) {
+                throw new AEADBadTagException("Invalid envelope: header too short");
+            }
+            AeadAlgorithm algorithm;
+            try {
+                algorithm = AeadAlgorithm.fromId(envelope[1]);
+            } catch (IllegalArgumentException e) {
+                throw new AEADBadTagException("Invalid envelope: " + e.getMessage());
+            }
+            return new Header(
+                    algorithm, envelope[2], new String(envelope, FIXED_LENGTH, idLength, StandardCharsets.UTF_8),
+                    Arrays.copyOf(envelope, wrapOffset), Arrays.copyOfRange(envelope, wrapOffset, wrapOffset + WRAPPED_KEY_LENGTH),
+                    wrapOffset + WRAPPED_KEY_LENGTH
+            );
+        }
+    }
+
+    private record WrappedKey(String masterKeyId, byte[] wrapped) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof WrappedKey other && masterKeyId.equals(other.masterKeyId) && Arrays.equals(wrapped, other.wrapped);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * masterKeyId.hashCode() + Arrays.hashCode(wrapped);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.yangyaofei.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lower case hex codec with lookup tables.
+ * <p>
+ * Besides the {@code String} methods it encodes and decodes into caller supplied {@code char[]}, {@code byte[]}
+ * (ASCII) and {@link ByteBuffer}s without allocating, and {@link Decoder} decodes input which arrives in chunks.
+ * Decoding accepts upper and lower case, and throws {@link IllegalArgumentException} on anything else.
+ */
+@SuppressWarnings("unused")
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    // two hex digits of every byte value, at 2 * value
+    private static final char[] ENCODE = new char[512];
+    // nibble of an ASCII char, -1 if it's no hex digit
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ENCODE[2 * i] = DIGITS[i >>> 4];
+            ENCODE[2 * i + 1] = DIGITS[i & 0xF];
+        }
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            DECODE['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            DECODE['a' + i] = (byte) (10 + i);
+            DECODE['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private HexCodec() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * Encode bytes to a hex string.
+     *
+     * @param bytes the bytes
+     * @return the hex string
+     */
+    public static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encode a range of bytes to a hex string.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @return the hex string
+     */
+    public static String encode(byte[] bytes, int offset, int length) {
+        char[] chars = new char[2 * length];
+        encode(bytes, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode a range of bytes into a char array.
+     *
+     * @param in     the bytes
+     * @param inOff  the offset of the range
+     * @param inLen  the length of the range
+     * @param out    the output, needs {@code 2 * inLen} chars from {@code outOff}
+     * @param outOff the offset in the output
+     * @return the number of chars written
+     */
+    public static int encode(byte[] in, int inOff, int inLen, char[] out, int outOff) {
+        checkRange(in.length, inOff, inLen);
+        checkRange(out.length, outOff, 2 * inLen);
+        for (int i = 0, j = outOff; i < inLen; i++, j += 2) {
+            int index = (in[inOff + i] & 0xFF) << 1;
+            out[j] = ENCODE[index];
+            out[j + 1] = ENCODE[index + 1];
+        }
+        return 2 * inLen;
+    }
+
+    /**
+     * Encode a range of bytes as ASCII hex digits into a byte array.
+     *
+     * @param in     the bytes
+     * @param inOff  the offset of the range
+     * @param inLen  the length of the range
+     * @param out    the output, needs {@code 2 * inLen} bytes from {@code outOff}
+     * @param outOff the offset in the output
+     * @return the number of bytes written
+     */
+    public static int encode(byte[] in, int inOff, int inLen, byte[] out, int outOff) {
+        checkRange(in.length, inOff, inLen);
+        checkRange(out.length, outOff, 2 * inLen);
+        for (int i = 0, j = outOff; i < inLen; i++, j += 2) {
+            int index = (in[inOff + i] & 0xFF) << 1;
+            out[j] = (byte) ENCODE[index];
+            out[j + 1] = (byte) ENCODE[index + 1];
+        }
+        return 2 * inLen;
+    }
+
+    /**
+     * Encode the remaining bytes of {@code in} as ASCII hex digits into {@code out}, both positions are moved.
+     *
+     * @param in  the bytes
+     * @param out the output, needs {@code 2 * in.remaining()} bytes remaining
+     * @return the number of bytes written
+     */
+    public static int encode(ByteBuffer in, ByteBuffer out) {
+        int length = in.remaining();
+        if (out.remaining() < 2 * length) {
+            throw new IndexOutOfBoundsException("Output too small, " + 2 * length + " bytes needed");
+        }
+        while (in.hasRemaining()) {
+            int index = (in.get() & 0xFF) << 1;
+            out.put((byte) ENCODE[index]);
+            out.put((byte) ENCODE[index + 1]);
+        }
+        return 2 * length;
+    }
+
+    /**
+     * Decode a hex string.
+     *
+     * @param hex the hex string, of even length
+     * @return the bytes
+     * @throws IllegalArgumentException if the length is odd or there is a char which is no hex digit
+     */
+    public static byte[] decode(CharSequence hex) {
+        byte[] bytes = new byte[decodedLength(hex.length())];
+        decode(hex, 0, hex.length(), bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Decode a range of a hex string into a byte array.
+     *
+     * @param in     the hex string
+     * @param inOff  the offset of the range
+     * @param inLen  the length of the range, even
+     * @param out    the output, needs {@code inLen / 2} bytes from {@code outOff}
+     * @param outOff the offset in the output
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the length is odd or there is a char which is no hex digit
+     */
+    public static int decode(CharSequence in, int inOff, int inLen, byte[] out, int outOff) {
+        int length = decodedLength(inLen);
+        checkRange(in.length(), inOff, inLen);
+        checkRange(out.length, outOff, length);
+        for (int i = inOff, j = outOff; j < outOff + length; i += 2, j++) {
+            out[j] = (byte) (nibble(in.charAt(i), i) << 4 | nibble(in.charAt(i + 1), i + 1));
+        }
+        return length;
+    }
+
+    /**
+     * Decode a range of a char array into a byte array.
+     *
+     * @param in     the hex digits
+     * @param inOff  the offset of the range
+     * @param inLen  the length of the range, even
+     * @param out    the output, needs {@code inLen / 2} bytes from {@code outOff}
+     * @param outOff the offset in the output
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the length is odd or there is a char which is no hex digit
+     */
+    public static int decode(char[] in, int inOff, int inLen, byte[] out, int outOff) {
+        int length = decodedLength(inLen);
+        checkRange(in.length, inOff, inLen);
+        checkRange(out.length, outOff, length);
+        for (int i = inOff, j = outOff; j < outOff + length; i += 2, j++) {
+            out[j] = (byte) (nibble(in[i], i) << 4 | nibble(in[i + 1], i + 1));
+        }
+        return length;
+    }
+
+    private static int decodedLength(int hexLength) {
+        if ((hexLength & 1) != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + hexLength);
+        }
+        return hexLength >>> 1;
+    }
+
+    private static int nibble(int c, long index) {
+        int value = c < 128 ? DECODE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Illegal hex digit " + (char) c + " at index " + index);
+        }
+        return value;
+    }
+
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + arrayLength);
+        }
+    }
+
+    /**
+     * Decoder of hex input which arrives in chunks, a chunk may end in the middle of a byte.
+     * <p>
+     * Feed the chunks to {@code update} and call {@link #finish()} at the end, an instance is not thread safe.
+     */
+    public static final class Decoder {
+        // the high nibble of a byte split over two chunks, -1 if none
+        private int pending = -1;
+        private long position;
+
+        /**
+         * Decode a chunk of chars.
+         *
+         * @param in     the chunk
+         * @param inOff  the offset of the chunk
+         * @param inLen  the length of the chunk
+         * @param out    the output, needs {@code (inLen + 1) / 2} bytes from {@code outOff}
+         * @param outOff the offset in the output
+         * @return the number of bytes written
+         * @throws IllegalArgumentException if there is a char which is no hex digit
+         */
+        public int update(char[] in, int inOff, int inLen, byte[] out, int outOff) {
+            checkRange(in.length, inOff, inLen);
+            int j = outOff;
+            for (int i = inOff; i < inOff + inLen; i++) {
+                int value = nibble(in[i]);
+                if (pending < 0) {
+                    pending = value;
+                } else {
+                    out[j++] = (byte) (pending << 4 | value);
+                    pending = -1;
+                }
+            }
+            return j - outOff;
+        }
+
+        /**
+         * Decode a chunk of ASCII hex digits, the positions of both buffers are moved.
+         *
+         * @param in  the chunk
+         * @param out the output, needs {@code (in.remaining() + 1) / 2} bytes remaining
+         * @return the number of bytes written
+         * @throws IllegalArgumentException if there is a byte which is no hex digit
+         */
+        public int update(ByteBuffer in, ByteBuffer out) {
+            int written = 0;
+            while (in.hasRemaining()) {
+                int value = nibble(in.get() & 0xFF);
+                if (pending < 0) {
+                    pending = value;
+                } else {
+                    out.put((byte) (pending << 4 | value));
+                    pending = -1;
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        /**
+         * End the input, the decoder can be used again for a new input afterwards.
+         *
+         * @throws IllegalArgumentException if the input had an odd number of hex digits
+         */
+        public void finish() {
+            boolean odd = pending >= 0;
+            pending = -1;
+            position = 0;
+            if (odd) {
+                throw new IllegalArgumentException("Odd number of hex digits");
+            }
+        }
+
+        private int nibble(int c) {
+            return HexCodec.nibble(c, position++);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.crypto.generators.SCrypt;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Key derivation functions for the keys of {@link CryptoUtils}.
+ * <p>
+ * Use {@link #hkdf(byte[], byte[], byte[], int)} for secrets which are already random, e.g. a master key or a shared
+ * secret, it is cheap. Use {@link #pbkdf2(char[], byte[], int, int)} or {@link #scrypt(char[], byte[], int, int, int, int)}
+ * for passwords, they are slow on purpose, so cache the derived keys, see {@link DerivedKeyCache}.
+ */
+@SuppressWarnings("unused")
+public final class KeyDerivation {
+    /**
+     * PBKDF2-HMAC-SHA256 iterations recommended by OWASP
+     */
+    public static final int PBKDF2_ITERATIONS = 600_000;
+    /**
+     * scrypt cost parameter N recommended by OWASP, with {@link #SCRYPT_R} and {@link #SCRYPT_P}
+     */
+    public static final int SCRYPT_N = 1 << 17;
+    public static final int SCRYPT_R = 8;
+    public static final int SCRYPT_P = 1;
+
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final String PBKDF2_WITH_HMAC_SHA256 = "PBKDF2WithHmacSHA256";
+    private static final int HASH_LENGTH = 32;
+
+    private KeyDerivation() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * HKDF-SHA256 of RFC 5869, extract and expand.
+     *
+     * @param secret the input key material, must have enough entropy already
+     * @param salt   the salt, may be null or empty
+     * @param info   the context of the derived key, e.g. its purpose, may be null or empty
+     * @param length the length of the derived key in bytes, at most 255 * 32
+     * @return the derived key
+     * @throws GeneralSecurityException if HmacSHA256 is not available
+     */
+    public static byte[] hkdf(byte[] secret, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        if (length <= 0 || length > 255 * HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid HKDF length " + length);
+        }
+        Mac mac = Mac.getInstance(HMAC_SHA256);
+        // extract, an empty salt is a string of zeros of the hash length
+        mac.init(new SecretKeySpec(salt == null || salt.length == 0 ? new byte[HASH_LENGTH] : salt, HMAC_SHA256));
+        byte[] prk = mac.doFinal(secret);
+        // expand
+        mac.init(new SecretKeySpec(prk, HMAC_SHA256));
+        byte[] okm = new byte[length];
+        byte[] block = new byte[0];
+        for (int offset = 0, i = 1; offset < length; offset += HASH_LENGTH, i++) {
+            mac.update(block);
+            if (info != null) {
+                mac.update(info);
+            }
+            mac.update((byte) i);
+            block = mac.doFinal();
+            System.arraycopy(block, 0, okm, offset, Math.min(HASH_LENGTH, length - offset));
+        }
+        Arrays.fill(prk, (byte) 0);
+        return okm;
+    }
+
+    /**
+     * HKDF-SHA256 into a 256bit key of the algorithm.
+     *
+     * @param secret    the input key material, must have enough entropy already
+     * @param salt      the salt, may be null or empty
+     * @param info      the context of the derived key, e.g. its purpose, may be null or empty
+     * @param algorithm the algorithm the key is for
+     * @return the derived key
+     * @throws GeneralSecurityException if HmacSHA256 is not available
+     */
+    public static SecretKey hkdf(byte[] secret, byte[] salt, byte[] info, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        return toKey(hkdf(secret, salt, info, 32), algorithm);
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 of a password.
+     *
+     * @param password   the password
+     * @param salt       the salt, 16 random bytes stored along the data
+     * @param iterations the iterations, e.g. {@link #PBKDF2_ITERATIONS}
+     * @param length     the length of the derived key in bytes
+     * @return the derived key
+     * @throws GeneralSecurityException if PBKDF2WithHmacSHA256 is not available
+     */
+    public static byte[] pbkdf2(char[] password, byte[] salt, int iterations, int length) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(PBKDF2_WITH_HMAC_SHA256).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 of a password into a 256bit key of the algorithm, with {@link #PBKDF2_ITERATIONS}.
+     *
+     * @param password  the password
+     * @param salt      the salt, 16 random bytes stored along the data
+     * @param algorithm the algorithm the key is for
+     * @return the derived key
+     * @throws GeneralSecurityException if PBKDF2WithHmacSHA256 is not available
+     */
+    public static SecretKey pbkdf2(char[] password, byte[] salt, AeadAlgorithm algorithm) throws GeneralSecurityException {
+        return toKey(pbkdf2(password, salt, PBKDF2_ITERATIONS, 32), algorithm);
+    }
+
+    /**
+     * scrypt of a password, memory hard, uses {@code 128 * n * r} bytes of memory.
+     *
+     * @param password the password
+     * @param salt     the salt, 16 random bytes stored along the data
+     * @param n        the cost parameter, a power of 2, e.g. {@link #SCRYPT_N}
+     * @param r        the block size, e.g. {@link #SCRYPT_R}
+     * @param p        the parallelization, e.g. {@link #SCRYPT_P}
+     * @param length   the length of the derived key in bytes
+     * @return the derived key
+     */
+    public static byte[] scrypt(char[] password, byte[] salt, int n, int r, int p, int length) {
+        byte[] bytes = PemUtils.toUtf8Bytes(password);
+        try {
+            return SCrypt.generate(bytes, salt, n, r, p, length);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * scrypt of a password into a 256bit key of the algorithm, with {@link #SCRYPT_N}, {@link #SCRYPT_R} and
+     * {@link #SCRYPT_P}.
+     *
+     * @param password  the password
+     * @param salt      the salt, 16 random bytes stored along the data
+     * @param algorithm the algorithm the key is for
+     * @return the derived key
+     */
+    public static SecretKey scrypt(char[] password, byte[] salt, AeadAlgorithm algorithm) {
+        return toKey(scrypt(password, salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, 32), algorithm);
+    }
+
+    private static SecretKey toKey(byte[] bytes, AeadAlgorithm algorithm) {
+        try {
+            return new SecretKeySpec(bytes, algorithm.getKeyAlgorithm());
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.yangyaofei.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * Key pair algorithms of certificates, with their key size or curve.
+ */
+@SuppressWarnings("unused")
+public enum KeyPairAlgorithm {
+    RSA_2048("RSA", 2048, null),
+    RSA_3072("RSA", 3072, null),
+    RSA_4096("RSA", 4096, null),
+    EC_P256("EC", 0, "secp256r1"),
+    EC_P384("EC", 0, "secp384r1"),
+    ED25519("Ed25519", 0, null);
+
+    private final String algorithm;
+    private final int keySize;
+    private final String curve;
+
+    KeyPairAlgorithm(String algorithm, int keySize, String curve) {
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.curve = curve;
+    }
+
+    /**
+     * Get the JCA algorithm name, e.g. {@code RSA} or {@code EC}.
+     *
+     * @return the algorithm name
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Get the signature algorithm of certificates signed with keys of this algorithm.
+     *
+     * @return the JCA signature algorithm, e.g. {@code SHA256withECDSA}
+     */
+    public String getSignatureAlgorithm() {
+        return switch (this) {
+            case RSA_2048, RSA_3072, RSA_4096 -> "SHA256withRSA";
+            case EC_P256 -> "SHA256withECDSA";
+            case EC_P384 -> "SHA384withECDSA";
+            case ED25519 -> "Ed25519";
+        };
+    }
+
+    /**
+     * Generate a key pair.
+     *
+     * @return the key pair
+     */
+    public KeyPair generate() {
+        try {
+            // a generator per pair, they are not thread safe and cheap next to the generation of an RSA pair
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm);
+            if (keySize > 0) {
+                keyPairGenerator.initialize(keySize);
+            } else if (curve != null) {
+                keyPairGenerator.initialize(new ECGenParameterSpec(curve));
+            }
+            return keyPairGenerator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't generate a " + this + " key pair", e);
+        }
+    }
+}
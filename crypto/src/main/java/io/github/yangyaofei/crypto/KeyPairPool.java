@@ -0,0 +1,208 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.Closeable;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of pre-generated key pairs, so taking a pair doesn't wait for the generation of an RSA key.
+ * <p>
+ * Background daemon threads keep the pool between its watermarks: when {@link #take()} leaves fewer pairs than the
+ * low watermark, the refill threads generate pairs until the high watermark is reached. When the pool is empty,
+ * {@link #take()} generates a pair on the calling thread, counted as miss in the {@link Metrics}. The pool is filled
+ * on creation.
+ * <p>
+ * The pooled private keys are held in memory until taken, {@link #close()} drops them.
+ */
+@SuppressWarnings("unused")
+public final class KeyPairPool implements Closeable {
+    private final KeyPairAlgorithm algorithm;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int refillThreads;
+    private final Queue<KeyPair> pairs = new ConcurrentLinkedQueue<>();
+    // pooled pairs plus pairs being generated for the pool, the refill threads stop at the high watermark
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger runningRefills = new AtomicInteger();
+    private final ExecutorService executor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder generateNanos = new LongAdder();
+    private final AtomicLong maxGenerateNanos = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Pool metrics.
+     *
+     * @param hits             the number of pairs taken from the pool
+     * @param misses           the number of pairs generated on the calling thread, because the pool was empty
+     * @param generated        the number of pairs generated for the pool
+     * @param available        the number of pairs in the pool now
+     * @param meanGenerateTime the mean time to generate a pair for the pool
+     * @param maxGenerateTime  the max time to generate a pair for the pool
+     */
+    public record Metrics(long hits, long misses, long generated, int available, Duration meanGenerateTime, Duration maxGenerateTime) {
+    }
+
+    /**
+     * Instantiates a new pool with watermarks 4 and 16 and one refill thread per two cores.
+     *
+     * @param algorithm the algorithm of the key pairs
+     */
+    public KeyPairPool(KeyPairAlgorithm algorithm) {
+        this(algorithm, 4, 16, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Instantiates a new pool.
+     *
+     * @param algorithm     the algorithm of the key pairs
+     * @param lowWatermark  the number of pairs below which the pool is refilled
+     * @param highWatermark the number of pairs the pool is refilled to
+     * @param refillThreads the number of threads refilling the pool
+     */
+    public KeyPairPool(KeyPairAlgorithm algorithm, int lowWatermark, int highWatermark, int refillThreads) {
+        if (lowWatermark < 0 || highWatermark < 1 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Invalid watermarks " + lowWatermark + " and " + highWatermark);
+        }
+        if (refillThreads < 1) {
+            throw new IllegalArgumentException("refillThreads must be positive: " + refillThreads);
+        }
+        this.algorithm = algorithm;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.refillThreads = refillThreads;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(refillThreads, runnable -> {
+            Thread thread = new Thread(runnable, "key-pair-pool-" + algorithm + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        refill();
+    }
+
+    /**
+     * Get the algorithm of the key pairs.
+     *
+     * @return the algorithm
+     */
+    public KeyPairAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Take a key pair from the pool, or generate one if the pool is empty.
+     *
+     * @return a key pair, which is not handed out again
+     */
+    public KeyPair take() {
+        if (closed) {
+            throw new IllegalStateException("KeyPairPool is closed");
+        }
+        KeyPair pair = pairs.poll();
+        if (pair != null) {
+            hits.increment();
+            if (reserved.decrementAndGet() < lowWatermark) {
+                refill();
+            }
+            return pair;
+        }
+        misses.increment();
+        refill();
+        return algorithm.generate();
+    }
+
+    /**
+     * Get the metrics of the pool.
+     *
+     * @return a snapshot of the metrics
+     */
+    public Metrics metrics() {
+        long count = generated.sum();
+        return new Metrics(
+                hits.sum(),
+                misses.sum(),
+                count,
+                pairs.size(),
+                Duration.ofNanos(count == 0 ? 0 : generateNanos.sum() / count),
+                Duration.ofNanos(maxGenerateNanos.get())
+        );
+    }
+
+    /**
+     * Stop the refill threads and drop the pooled key pairs.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        pairs.clear();
+    }
+
+    private void refill() {
+        int running;
+        while (!closed && (running = runningRefills.get()) < refillThreads && reserved.get() < highWatermark) {
+            if (runningRefills.compareAndSet(running, running + 1)) {
+                try {
+                    executor.execute(this::refillLoop);
+                } catch (RejectedExecutionException e) {
+                    // closed in between
+                    runningRefills.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void refillLoop() {
+        boolean failed = false;
+        try {
+            while (!closed && reserve()) {
+                long start = System.nanoTime();
+                KeyPair pair;
+                try {
+                    pair = algorithm.generate();
+                } catch (RuntimeException e) {
+                    // give the slot back, and leave it to the next take to try again instead of spinning
+                    reserved.decrementAndGet();
+                    failed = true;
+                    return;
+                }
+                long nanos = System.nanoTime() - start;
+                generateNanos.add(nanos);
+                maxGenerateNanos.accumulateAndGet(nanos, Math::max);
+                generated.increment();
+                pairs.offer(pair);
+            }
+        } finally {
+            runningRefills.decrementAndGet();
+            if (closed) {
+                pairs.clear();
+            } else if (!failed && reserved.get() < lowWatermark) {
+                // a take may have seen all refill threads still running
+                refill();
+            }
+        }
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = reserved.get();
+            if (current >= highWatermark) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + 1));
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of private keys read by {@link PemUtils#readPrivateKey(Path, Supplier)}, which watches the key files and
+ * reloads them when they change.
+ * <p>
+ * Parsing a key, and for encrypted keys stretching the password, is done once per file content: {@link #get(Path, Supplier)}
+ * is a plain read of a concurrent map once the key is loaded. The directories of the keys are watched with a
+ * {@link WatchService} by a daemon thread, on a change the file is read again and only parsed again if its SHA-256
+ * differs, so a touched file or a rotation to the same content costs no parse. A file which fails to parse on reload,
+ * e.g. while it's half written, keeps the old key until the next change.
+ */
+@SuppressWarnings("unused")
+public final class KeyStoreCache implements Closeable {
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+    private final Thread watcher;
+    private volatile boolean closed;
+
+    private record Entry(PrivateKey key, FileTime modified, byte[] hash, Supplier<char[]> passwordSupplier) {
+    }
+
+    /**
+     * Instantiates a new cache and starts its watcher thread.
+     *
+     * @throws IOException if the file system doesn't support watching
+     */
+    public KeyStoreCache() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watcher = new Thread(this::watch, "key-store-cache-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Get the private key of a PEM file, read and parse it on the first call.
+     *
+     * @param keyPath          the path for the key file
+     * @param passwordSupplier A password supplier for the potentially encrypted (password protected) key, kept for reloads
+     * @return the private key
+     * @throws IOException if the file can't be read
+     */
+    public PrivateKey get(Path keyPath, Supplier<char[]> passwordSupplier) throws IOException {
+        Path path = keyPath.toAbsolutePath().normalize();
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            return entry.key;
+        }
+        if (closed) {
+            throw new IllegalStateException("KeyStoreCache is closed");
+        }
+        watch(path.getParent());
+        try {
+            // concurrent misses of a path parse it once, invalidate and close wait for the load
+            entry = entries.computeIfAbsent(path, p -> {
+                if (closed) {
+                    throw new IllegalStateException("KeyStoreCache is closed");
+                }
+                try {
+                    return load(p, passwordSupplier, null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // the watcher skips a file without entry, so a rotation during the load is only seen here
+        reload(path);
+        Entry current = entries.get(path);
+        return current != null ? current.key : entry.key;
+    }
+
+    /**
+     * Drop the key of a file, the next {@link #get(Path, Supplier)} reads it again.
+     *
+     * @param keyPath the path for the key file
+     */
+    public void invalidate(Path keyPath) {
+        entries.remove(keyPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Check the cached keys of all files against their files now, instead of waiting for the watcher, e.g. on file
+     * systems where changes are not reported.
+     */
+    public void refresh() {
+        entries.keySet().forEach(this::reload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        entries.clear();
+    }
+
+    private void watch(Path directory) throws IOException {
+        if (directory == null || watchedDirectories.containsKey(directory)) {
+            return;
+        }
+        synchronized (watchedDirectories) {
+            if (!watchedDirectories.containsKey(directory)) {
+                // create, modify and delete, so writes in place, renames over the file and symlink swaps are all seen
+                watchedDirectories.put(directory, directory.register(
+                        watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE
+                ));
+            }
+        }
+    }
+
+    private void watch() {
+        while (!closed) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            // events come per file name, but a symlink swap changes the file behind other names, so check every key
+            // of the directory
+            watchKey.pollEvents();
+            Path directory = (Path) watchKey.watchable();
+            for (Path path : entries.keySet()) {
+                if (directory.equals(path.getParent())) {
+                    reload(path);
+                }
+            }
+            if (!watchKey.reset()) {
+                watchedDirectories.remove(directory);
+            }
+        }
+    }
+
+    private void reload(Path path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return;
+        }
+        try {
+            if (entry.modified.equals(Files.getLastModifiedTime(path)) && !Files.isSymbolicLink(path)) {
+                return;
+            }
+            Entry reloaded = load(path, entry.passwordSupplier, entry);
+            if (reloaded != entry) {
+                entries.replace(path, entry, reloaded);
+            }
+        } catch (IOException | RuntimeException e) {
+            // keep the old key, the file may be in the middle of a rotation, the next event reads it again
+        }
+    }
+
+    /**
+     * Read the file, and parse it unless it has the same content as {@code previous}.
+     */
+    private static Entry load(Path path, Supplier<char[]> passwordSupplier, Entry previous) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(path);
+        byte[] content = Files.readAllBytes(path);
+        byte[] hash = sha256(content);
+        if (previous != null && Arrays.equals(previous.hash, hash)) {
+            return previous.modified.equals(modified) ? previous : new Entry(previous.key, modified, hash, passwordSupplier);
+        }
+        try {
+            PrivateKey key = PemUtils.readPrivateKey(content, path.toString(), passwordSupplier);
+            return new Entry(key, modified, hash, passwordSupplier);
+        } finally {
+            Arrays.fill(content, (byte) 0);
+        }
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
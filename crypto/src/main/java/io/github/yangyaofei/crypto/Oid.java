@@ -0,0 +1,256 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * An ASN.1 OBJECT IDENTIFIER, held as its DER encoded content octets.
+ * <p>
+ * OIDs are interned: {@link #of(String)} and {@link #decode(byte[], int, int)} return the same instance for the same
+ * OID, found in a hash table over the encoded bytes, so matching a decoded OID against a known one is a byte compare
+ * and a lookup of a known OID allocates nothing. The dotted string is decoded once per instance. Decoded OIDs which
+ * are not known yet are interned up to {@value #MAX_INTERNED} OIDs, beyond that a fresh instance is returned, so
+ * hostile input can't grow the table without bound.
+ */
+@SuppressWarnings("unused")
+public final class Oid {
+    private static final int MAX_INTERNED = 4096;
+    private static final Object LOCK = new Object();
+    // open addressing table of the interned OIDs, replaced on growth, never more than half full
+    private static volatile Oid[] table = new Oid[256];
+    private static int interned;
+
+    private final byte[] encoded;
+    private final int hash;
+    private volatile String string;
+
+    private Oid(byte[] encoded, int hash, String string) {
+        this.encoded = encoded;
+        this.hash = hash;
+        this.string = string;
+    }
+
+    /**
+     * Get the OID of a dotted string, e.g. {@code 1.2.840.113549.1.1.1}.
+     *
+     * @param dotted the dotted string
+     * @return the interned OID
+     * @throws IllegalArgumentException if the string is no valid OID
+     */
+    public static Oid of(String dotted) {
+        byte[] encoded = encode(dotted);
+        Oid oid = lookup(encoded, 0, encoded.length);
+        return oid != null ? oid : intern(new Oid(encoded, hash(encoded, 0, encoded.length), null), true);
+    }
+
+    /**
+     * Get the OID of DER encoded content octets, without copying or allocating if it's interned already.
+     *
+     * @param data   the input
+     * @param offset the offset of the content octets
+     * @param length the length of the content octets
+     * @return the OID
+     * @throws IOException if the content octets are no valid OID
+     */
+    public static Oid decode(byte[] data, int offset, int length) throws IOException {
+        Oid oid = lookup(data, offset, length);
+        if (oid != null) {
+            return oid;
+        }
+        validate(data, offset, length);
+        byte[] encoded = Arrays.copyOfRange(data, offset, offset + length);
+        return intern(new Oid(encoded, hash(encoded, 0, length), null), false);
+    }
+
+    /**
+     * If the DER encoded content octets are this OID, without decoding them.
+     *
+     * @param data   the input
+     * @param offset the offset of the content octets
+     * @param length the length of the content octets
+     * @return if they are equal
+     */
+    public boolean matches(byte[] data, int offset, int length) {
+        return Arrays.equals(encoded, 0, encoded.length, data, offset, offset + length);
+    }
+
+    /**
+     * If this OID is below {@code prefix} in the OID tree, e.g. 2.16.840.1.101.3.4.1.42 is below 2.16.840.1.101.3.4.1
+     * but 2.16.840.1.101.3.4.10 is not.
+     *
+     * @param prefix the parent OID
+     * @return if this OID starts with all arcs of {@code prefix}
+     */
+    public boolean startsWith(Oid prefix) {
+        // every arc ends in an octet without bit 8, so a prefix of the octets which is an OID is a prefix of arcs
+        return encoded.length > prefix.encoded.length
+                && Arrays.equals(encoded, 0, prefix.encoded.length, prefix.encoded, 0, prefix.encoded.length);
+    }
+
+    /**
+     * Get a copy of the DER encoded content octets.
+     *
+     * @return the content octets, without tag and length
+     */
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Oid other && hash == other.hash && Arrays.equals(encoded, other.encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * The dotted string of the OID.
+     */
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            s = toDotted(encoded);
+            string = s;
+        }
+        return s;
+    }
+
+    private static Oid lookup(byte[] data, int offset, int length) {
+        Oid[] t = table;
+        int mask = t.length - 1;
+        for (int i = hash(data, offset, length) & mask; t[i] != null; i = (i + 1) & mask) {
+            if (t[i].matches(data, offset, length)) {
+                return t[i];
+            }
+        }
+        return null;
+    }
+
+    private static Oid intern(Oid oid, boolean known) {
+        synchronized (LOCK) {
+            Oid existing = lookup(oid.encoded, 0, oid.encoded.length);
+            if (existing != null) {
+                return existing;
+            }
+            if (!known && interned >= MAX_INTERNED) {
+                return oid;
+            }
+            Oid[] t = table;
+            if (2 * (interned + 1) > t.length) {
+                t = new Oid[2 * t.length];
+                for (Oid o : table) {
+                    if (o != null) {
+                        insert(t, o);
+                    }
+                }
+            } else {
+                t = t.clone();
+            }
+            insert(t, oid);
+            interned++;
+            // readers see either the old or the new table, both complete
+            table = t;
+            return oid;
+        }
+    }
+
+    private static void insert(Oid[] t, Oid oid) {
+        int mask = t.length - 1;
+        int i = oid.hash & mask;
+        while (t[i] != null) {
+            i = (i + 1) & mask;
+        }
+        t[i] = oid;
+    }
+
+    private static int hash(byte[] data, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + data[i];
+        }
+        // spread the bits, the low ones index the table
+        return h ^ (h >>> 16);
+    }
+
+    private static void validate(byte[] data, int offset, int length) throws IOException {
+        if (length == 0 || (data[offset + length - 1] & 0x80) != 0) {
+            throw new IOException("Invalid DER: object OID is truncated");
+        }
+        for (int i = offset; i < offset + length; i++) {
+            // a sub-identifier starts at the first octet, or after one without bit 8, and has no leading zero octet
+            if ((data[i] & 0xFF) == 0x80 && (i == offset || (data[i - 1] & 0x80) == 0)) {
+                throw new IOException("Invalid DER: object OID sub-identifier with leading zero");
+            }
+        }
+    }
+
+    private static String toDotted(byte[] encoded) {
+        StringBuilder sb = new StringBuilder(4 * encoded.length);
+        int start = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            if ((encoded[i] & 0x80) != 0) {
+                continue;
+            }
+            if (i - start < 8) {
+                long value = 0;
+                for (int j = start; j <= i; j++) {
+                    value = value << 7 | encoded[j] & 0x7F;
+                }
+                if (start == 0) {
+                    int arc = (int) Math.min(value / 40, 2);
+                    sb.append(arc).append('.').append(value - 40L * arc);
+                } else {
+                    sb.append('.').append(value);
+                }
+            } else {
+                BigInteger value = BigInteger.ZERO;
+                for (int j = start; j <= i; j++) {
+                    value = value.shiftLeft(7).or(BigInteger.valueOf(encoded[j] & 0x7F));
+                }
+                if (start == 0) {
+                    sb.append("2.").append(value.subtract(BigInteger.valueOf(80)));
+                } else {
+                    sb.append('.').append(value);
+                }
+            }
+            start = i + 1;
+        }
+        return sb.toString();
+    }
+
+    private static byte[] encode(String dotted) {
+        String[] parts = dotted.split("\\.", -1);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("OID needs at least two arcs: " + dotted);
+        }
+        long[] arcs = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                arcs[i] = Long.parseLong(parts[i]);
+                if (arcs[i] < 0) {
+                    throw new IllegalArgumentException("Negative OID arc in " + dotted);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid OID " + dotted, e);
+        }
+        if (arcs[0] > 2 || arcs[0] < 2 && arcs[1] >= 40 || arcs[1] > Long.MAX_VALUE - 80) {
+            throw new IllegalArgumentException("Invalid first arcs of OID " + dotted);
+        }
+        byte[] out = new byte[10 * arcs.length];
+        int n = 0;
+        for (int i = 1; i < arcs.length; i++) {
+            long value = i == 1 ? arcs[0] * 40 + arcs[1] : arcs[i];
+            int groups = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+            for (int g = groups - 1; g >= 0; g--) {
+                out[n++] = (byte) ((value >>> (7 * g)) & 0x7F | (g > 0 ? 0x80 : 0));
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
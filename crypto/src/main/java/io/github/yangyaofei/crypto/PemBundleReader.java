@@ -0,0 +1,340 @@
+package io.github.yangyaofei.crypto;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Streaming reader of every PEM block in a file or stream: private keys, certificates, CRLs, parameters and anything
+ * else in PEM armor, e.g. a trust bundle of hundreds of certificates or a chain file with its key.
+ * <p>
+ * {@link #read()} returns the next {@link Entry} as soon as its END line is read, holding only the raw block, the
+ * Base64 body is decoded and the object is parsed when the caller asks for it. {@link #readCertificates(Executor)}
+ * decodes the certificates of the rest of the stream in parallel, for large CA bundles. A reader is not thread safe,
+ * its entries are.
+ */
+@SuppressWarnings("unused")
+public final class PemBundleReader implements Closeable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final String source;
+    private byte[] buffer = new byte[CHUNK_SIZE];
+    private int start;
+    private int limit;
+    // bytes of the stream before the buffer
+    private long discarded;
+    private boolean eof;
+
+    /**
+     * The kind of a PEM block, by its label.
+     */
+    public enum Kind {
+        CERTIFICATE,
+        CRL,
+        PRIVATE_KEY,
+        PUBLIC_KEY,
+        CERTIFICATE_REQUEST,
+        PARAMETERS,
+        OTHER;
+
+        static Kind of(String label) {
+            return switch (label) {
+                case "CERTIFICATE", "X509 CERTIFICATE", "TRUSTED CERTIFICATE" -> CERTIFICATE;
+                case "X509 CRL" -> CRL;
+                case "PRIVATE KEY", "ENCRYPTED PRIVATE KEY", "RSA PRIVATE KEY", "DSA PRIVATE KEY", "EC PRIVATE KEY",
+                     "OPENSSH PRIVATE KEY" -> PRIVATE_KEY;
+                case "PUBLIC KEY", "RSA PUBLIC KEY" -> PUBLIC_KEY;
+                case "CERTIFICATE REQUEST", "NEW CERTIFICATE REQUEST" -> CERTIFICATE_REQUEST;
+                default -> label.endsWith(" PARAMETERS") ? PARAMETERS : OTHER;
+            };
+        }
+    }
+
+    /**
+     * Instantiates a reader of a stream, which is closed with the reader.
+     *
+     * @param input  the stream
+     * @param source the source of the stream for error messages, e.g. the path
+     */
+    public PemBundleReader(InputStream input, String source) {
+        this.input = input;
+        this.source = source;
+    }
+
+    /**
+     * Instantiates a reader of a file.
+     *
+     * @param path the file
+     * @throws IOException if the file can't be opened
+     */
+    public PemBundleReader(Path path) throws IOException {
+        this(Files.newInputStream(path), path.toString());
+    }
+
+    /**
+     * Read the next block.
+     *
+     * @return the block, null at the end of the stream
+     * @throws IOException if the stream can't be read or a block has no matching END line
+     */
+    @Nullable
+    public Entry read() throws IOException {
+        while (true) {
+            PemScanner scanner = new PemScanner(buffer, start, limit - start);
+            PemScanner.Span span;
+            try {
+                span = scanner.nextSpan(eof);
+            } catch (IOException e) {
+                throw new IOException(e.getMessage() + " in " + source, e);
+            }
+            if (span != null) {
+                start = span.next();
+                byte[] raw = Arrays.copyOfRange(buffer, span.begin(), span.next());
+                return new Entry(raw, span.shift(-span.begin()), discarded + span.begin(), source);
+            }
+            start = scanner.position();
+            if (eof) {
+                return null;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Read all remaining blocks.
+     *
+     * @return the blocks in order
+     * @throws IOException if the stream can't be read or a block has no matching END line
+     */
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry = read(); entry != null; entry = read()) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Read and parse the certificates of all remaining blocks, the other blocks are skipped.
+     *
+     * @return the certificates in order
+     * @throws IOException          if the stream can't be read or a block is malformed
+     * @throws CertificateException if a certificate can't be parsed
+     */
+    public List<X509Certificate> readCertificates() throws IOException, CertificateException {
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (Entry entry = read(); entry != null; entry = read()) {
+            if (entry.kind() == Kind.CERTIFICATE) {
+                certificates.add(entry.certificate());
+            }
+        }
+        return certificates;
+    }
+
+    /**
+     * Read the certificates of all remaining blocks and decode and parse them on {@code executor}, the stream is read
+     * while the first certificates are already parsed. The other blocks are skipped.
+     *
+     * @param executor the executor for decoding and parsing
+     * @return the certificates in order
+     * @throws IOException          if the stream can't be read or a block is malformed
+     * @throws CertificateException if a certificate can't be parsed
+     */
+    public List<X509Certificate> readCertificates(Executor executor) throws IOException, CertificateException {
+        List<CompletableFuture<X509Certificate>> futures = new ArrayList<>();
+        for (Entry entry = read(); entry != null; entry = read()) {
+            if (entry.kind() == Kind.CERTIFICATE) {
+                Entry certificate = entry;
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return certificate.certificate();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (CertificateException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+        }
+        List<X509Certificate> certificates = new ArrayList<>(futures.size());
+        for (CompletableFuture<X509Certificate> future : futures) {
+            try {
+                certificates.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                if (e.getCause() instanceof CertificateException certificateException) {
+                    throw certificateException;
+                }
+                throw e;
+            }
+        }
+        return certificates;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            discarded += start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            // a block larger than the buffer
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * A PEM block of a bundle, decoded on first use.
+     */
+    public static final class Entry {
+        private final byte[] raw;
+        private final PemScanner.Span span;
+        private final long offset;
+        private final String source;
+        private final Kind kind;
+        private volatile PemScanner.Block block;
+
+        private Entry(byte[] raw, PemScanner.Span span, long offset, String source) {
+            this.raw = raw;
+            this.span = span;
+            this.offset = offset;
+            this.source = source;
+            this.kind = Kind.of(span.label());
+        }
+
+        /**
+         * The label of the armor, e.g. {@code CERTIFICATE} or {@code EC PRIVATE KEY}.
+         *
+         * @return the label
+         */
+        public String label() {
+            return span.label();
+        }
+
+        /**
+         * The kind of the block.
+         *
+         * @return the kind
+         */
+        public Kind kind() {
+            return kind;
+        }
+
+        /**
+         * The offset of the BEGIN line in the stream.
+         *
+         * @return the offset
+         */
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * The RFC 1421 headers of the block, e.g. {@code Proc-Type} and {@code DEK-Info}.
+         *
+         * @return the headers, empty if there are none
+         * @throws IOException if the body isn't valid Base64
+         */
+        public Map<String, String> headers() throws IOException {
+            return block().headers();
+        }
+
+        /**
+         * The decoded body of the block.
+         *
+         * @return a copy of the DER bytes
+         * @throws IOException if the body isn't valid Base64
+         */
+        public byte[] der() throws IOException {
+            return block().der().clone();
+        }
+
+        /**
+         * Parse the block as certificate.
+         *
+         * @return the certificate
+         * @throws IOException          if the body isn't valid Base64
+         * @throws CertificateException if the block is no certificate
+         */
+        public X509Certificate certificate() throws IOException, CertificateException {
+            require(Kind.CERTIFICATE);
+            return (X509Certificate) CertificateCache.certificateFactory().generateCertificate(new ByteArrayInputStream(block().der()));
+        }
+
+        /**
+         * Parse the block as CRL.
+         *
+         * @return the CRL
+         * @throws IOException  if the body isn't valid Base64
+         * @throws CRLException if the block is no CRL
+         */
+        public X509CRL crl() throws IOException, CRLException {
+            require(Kind.CRL);
+            return (X509CRL) CertificateCache.certificateFactory().generateCRL(new ByteArrayInputStream(block().der()));
+        }
+
+        /**
+         * Parse the block as private key, in the formats of {@link PemUtils#readPrivateKey(Path, Supplier)}.
+         *
+         * @param passwordSupplier A password supplier for the potentially encrypted (password protected) key
+         * @return the private key
+         * @throws IOException if the key can't be parsed
+         */
+        public PrivateKey privateKey(Supplier<char[]> passwordSupplier) throws IOException {
+            require(Kind.PRIVATE_KEY);
+            return PemUtils.readPrivateKey(block(), source + " at offset " + offset, passwordSupplier);
+        }
+
+        private void require(Kind expected) {
+            if (kind != expected) {
+                throw new IllegalStateException("PEM block " + span.label() + " at offset " + offset + " of " + source + " is no " + expected);
+            }
+        }
+
+        private PemScanner.Block block() throws IOException {
+            PemScanner.Block decoded = block;
+            if (decoded == null) {
+                try {
+                    decoded = new PemScanner(raw).decode(span);
+                } catch (IOException e) {
+                    throw new IOException(e.getMessage() + " in " + source, e);
+                }
+                block = decoded;
+            }
+            return decoded;
+        }
+    }
+}
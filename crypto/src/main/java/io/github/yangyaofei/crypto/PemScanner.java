@@ -0,0 +1,312 @@
+package io.github.yangyaofei.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tokenizer of PEM blocks over bytes, without lines or strings in between.
+ * <p>
+ * {@link #next()} finds the {@code -----BEGIN label-----} armor, reads the RFC 1421 headers (e.g. {@code Proc-Type} and
+ * {@code DEK-Info} of OpenSSL encrypted keys) and decodes the Base64 body straight into the DER bytes up to the
+ * matching {@code -----END label-----}. Text outside of the blocks is skipped, like the comments of certificate
+ * bundles.
+ */
+final class PemScanner {
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "-----END ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DASHES = "-----".getBytes(StandardCharsets.US_ASCII);
+    private static final int WHITESPACE = -2;
+    private static final int PADDING = -3;
+    // sextet of a Base64 char, -1 if it's invalid
+    private static final int[] BASE64 = new int[256];
+
+    static {
+        Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = i;
+        }
+        BASE64[' '] = WHITESPACE;
+        BASE64['\t'] = WHITESPACE;
+        BASE64['\r'] = WHITESPACE;
+        BASE64['\n'] = WHITESPACE;
+        BASE64['='] = PADDING;
+    }
+
+    /**
+     * A PEM block.
+     *
+     * @param label   the label of the armor, e.g. {@code PRIVATE KEY}
+     * @param headers the RFC 1421 headers in order, empty if there are none
+     * @param der     the decoded body
+     * @param offset  the offset of the BEGIN line in the input
+     */
+    record Block(String label, Map<String, String> headers, byte[] der, int offset) {
+    }
+
+    /**
+     * Where a PEM block is in the input, before decoding it.
+     *
+     * @param label     the label of the armor
+     * @param begin     the offset of the BEGIN line
+     * @param bodyStart the offset of the line after the BEGIN line
+     * @param end       the offset of the END line
+     * @param next      the offset of the line after the END line
+     */
+    record Span(String label, int begin, int bodyStart, int end, int next) {
+        Span shift(int delta) {
+            return new Span(label, begin + delta, bodyStart + delta, end + delta, next + delta);
+        }
+    }
+
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    PemScanner(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    PemScanner(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    PemScanner(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.data = buffer.array();
+            this.position = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.data = new byte[buffer.remaining()];
+            buffer.duplicate().get(this.data);
+            this.position = 0;
+            this.limit = data.length;
+        }
+    }
+
+    /**
+     * The offset after the last returned block.
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Find and decode the next block.
+     *
+     * @return the block, null if there is no block left
+     * @throws IOException if the block has no matching END line or its body isn't valid Base64
+     */
+    Block next() throws IOException {
+        Span span = nextSpan(true);
+        return span == null ? null : decode(span);
+    }
+
+    /**
+     * Find the next block without decoding it.
+     * <p>
+     * With {@code complete} false the input is a prefix of a longer input, e.g. the part of a stream read so far: a
+     * block which isn't finished yet is no error but null, and {@link #position()} is left where the scan has to go on
+     * once more input is appended, at the start of the unfinished block or of the last line.
+     *
+     * @param complete if the input ends here
+     * @return the block, null if there is no (finished) block left
+     * @throws IOException if the block has no matching END line
+     */
+    Span nextSpan(boolean complete) throws IOException {
+        int begin = findLineStart(BEGIN, position);
+        if (begin < 0) {
+            position = complete ? limit : lastLineStart();
+            return null;
+        }
+        int labelStart = begin + BEGIN.length;
+        int labelEnd = indexOf(DASHES, labelStart, lineEnd(labelStart));
+        int bodyStart = labelEnd < 0 ? -1 : nextLine(labelEnd);
+        int end = labelEnd < 0 ? -1 : findLineStart(END, bodyStart);
+        if (!complete && (end < 0 || lineEnd(end) == limit)) {
+            position = begin;
+            return null;
+        }
+        if (labelEnd < 0) {
+            throw new IOException("Malformed PEM file, BEGIN line is not terminated");
+        }
+        String label = new String(data, labelStart, labelEnd - labelStart, StandardCharsets.US_ASCII);
+        if (end < 0 || !matches(end + END.length, label)) {
+            throw new IOException("Malformed PEM file, PEM footer is invalid or missing for " + label);
+        }
+        position = nextLine(end + END.length + label.length());
+        return new Span(label, begin, bodyStart, end, position);
+    }
+
+    /**
+     * Decode a block found by {@link #nextSpan(boolean)} of this scanner, or of another over the same bytes.
+     *
+     * @param span the block
+     * @return the decoded block
+     * @throws IOException if the body isn't valid Base64
+     */
+    Block decode(Span span) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        int p = readHeaders(span.bodyStart(), span.end(), headers);
+        byte[] der = decodeBase64(p, span.end());
+        return new Block(span.label(), headers.isEmpty() ? Collections.emptyMap() : headers, der, span.begin());
+    }
+
+    /**
+     * Read the header lines at the start of the body, they are the lines with a colon, a line starting with a space
+     * continues the previous header.
+     *
+     * @return the offset of the Base64 data after the headers
+     */
+    private int readHeaders(int from, int end, Map<String, String> headers) {
+        int p = from;
+        String last = null;
+        while (p < end) {
+            int lineEnd = Math.min(lineEnd(p), end);
+            int colon = indexOf((byte) ':', p, lineEnd);
+            if (colon >= 0) {
+                last = trimmed(p, colon);
+                headers.put(last, trimmed(colon + 1, lineEnd));
+            } else if (last != null && (data[p] == ' ' || data[p] == '\t') && !trimmed(p, lineEnd).isEmpty()) {
+                headers.put(last, headers.get(last) + trimmed(p, lineEnd));
+            } else {
+                return p;
+            }
+            p = nextLine(lineEnd);
+        }
+        return p;
+    }
+
+    private byte[] decodeBase64(int from, int to) throws IOException {
+        byte[] out = new byte[(to - from) / 4 * 3 + 3];
+        int n = 0;
+        int bits = 0;
+        int count = 0;
+        int padding = 0;
+        for (int i = from; i < to; i++) {
+            int value = BASE64[data[i] & 0xFF];
+            if (value >= 0 && padding == 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    out[n++] = (byte) (bits >> 16);
+                    out[n++] = (byte) (bits >> 8);
+                    out[n++] = (byte) bits;
+                    bits = 0;
+                    count = 0;
+                }
+            } else if (value == PADDING) {
+                if (count < 2 || count + ++padding > 4) {
+                    throw new IOException("Malformed PEM file, misplaced Base64 padding at offset " + i);
+                }
+            } else if (value != WHITESPACE) {
+                throw new IOException("Malformed PEM file, invalid Base64 at offset " + i);
+            }
+        }
+        if (padding > 0 && count + padding != 4 || padding == 0 && count == 1) {
+            throw new IOException("Malformed PEM file, truncated Base64");
+        }
+        if (count == 2) {
+            out[n++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            out[n++] = (byte) (bits >> 10);
+            out[n++] = (byte) (bits >> 2);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Find the pattern at the start of a line, leading blanks allowed.
+     */
+    private int findLineStart(byte[] pattern, int from) {
+        int p = from;
+        while (true) {
+            int found = indexOf(pattern, p, limit);
+            if (found < 0) {
+                return -1;
+            }
+            int q = found - 1;
+            while (q >= from && (data[q] == ' ' || data[q] == '\t')) {
+                q--;
+            }
+            if (q < from || data[q] == '\n' || data[q] == '\r') {
+                return found;
+            }
+            p = found + 1;
+        }
+    }
+
+    private int lastLineStart() {
+        for (int i = limit - 1; i >= position; i--) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return position;
+    }
+
+    private boolean matches(int offset, String label) {
+        int length = label.length();
+        if (offset + length + DASHES.length > limit) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != label.charAt(i)) {
+                return false;
+            }
+        }
+        return indexOf(DASHES, offset + length, offset + length + DASHES.length) == offset + length;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        byte first = pattern[0];
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (data[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int lineEnd(int from) {
+        int i = indexOf((byte) '\n', from, limit);
+        return i < 0 ? limit : i;
+    }
+
+    private int nextLine(int from) {
+        int i = lineEnd(from);
+        return i < limit ? i + 1 : limit;
+    }
+
+    private String trimmed(int from, int to) {
+        while (from < to && data[from] <= ' ') {
+            from++;
+        }
+        while (to > from && data[to - 1] <= ' ') {
+            to--;
+        }
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+}
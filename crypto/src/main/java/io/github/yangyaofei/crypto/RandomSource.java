@@ -0,0 +1,155 @@
+package io.github.yangyaofei.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Shared source of secure random bytes, a DRBG per thread.
+ * <p>
+ * A {@link SecureRandom} shared by all threads serializes them on its lock, and a new one per call seeds itself from
+ * the entropy source every time. Here every thread has its own instance of the {@code DRBG} of the platform, by
+ * default a Hash_DRBG with SHA-256 (NIST SP 800-90A), seeded once from the entropy source and reseeded after
+ * {@value #RESEED_BYTES} bytes or {@link #RESEED_INTERVAL}, whichever comes first.
+ */
+@SuppressWarnings("unused")
+public final class RandomSource {
+    /**
+     * The number of bytes a thread's generator returns before it's reseeded.
+     */
+    public static final long RESEED_BYTES = 1L << 24;
+    /**
+     * The time after which a thread's generator is reseeded.
+     */
+    public static final Duration RESEED_INTERVAL = Duration.ofMinutes(10);
+
+    private static final long RESEED_INTERVAL_NANOS = RESEED_INTERVAL.toNanos();
+    private static final int SCRATCH_SIZE = 256;
+    private static final ThreadLocal<Generator> GENERATORS = ThreadLocal.withInitial(Generator::new);
+
+    private RandomSource() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * Get the generator of this thread, e.g. for {@link java.math.BigInteger} or key generators, reseeded if due.
+     * <p>
+     * It must not be handed to other threads, and bytes drawn from it directly are not counted for reseeding.
+     *
+     * @return the generator of this thread
+     */
+    public static SecureRandom current() {
+        Generator generator = GENERATORS.get();
+        generator.reseedIfDue(0);
+        return generator.random;
+    }
+
+    /**
+     * Fill an array with random bytes.
+     *
+     * @param bytes the array
+     */
+    public static void nextBytes(byte[] bytes) {
+        Generator generator = GENERATORS.get();
+        generator.reseedIfDue(bytes.length);
+        generator.random.nextBytes(bytes);
+    }
+
+    /**
+     * Fill a range of an array with random bytes.
+     *
+     * @param bytes  the array
+     * @param offset the start of the range
+     * @param length the length of the range
+     */
+    public static void nextBytes(byte[] bytes, int offset, int length) {
+        if (offset == 0 && length == bytes.length) {
+            nextBytes(bytes);
+            return;
+        }
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + bytes.length);
+        }
+        Generator generator = GENERATORS.get();
+        generator.reseedIfDue(length);
+        // SecureRandom fills whole arrays only, go through the scratch buffer of the thread
+        while (length > 0) {
+            byte[] chunk = draw(generator, length);
+            System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+            Arrays.fill(chunk, (byte) 0);
+            offset += chunk.length;
+            length -= chunk.length;
+        }
+    }
+
+    /**
+     * Fill the remaining bytes of a buffer with random bytes, its position is moved to its limit.
+     *
+     * @param buffer the buffer
+     */
+    public static void nextBytes(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            nextBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        Generator generator = GENERATORS.get();
+        generator.reseedIfDue(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            byte[] chunk = draw(generator, buffer.remaining());
+            buffer.put(chunk);
+            Arrays.fill(chunk, (byte) 0);
+        }
+    }
+
+    /**
+     * Draw the next chunk of at most {@code length} bytes, the scratch buffer for full chunks, an array of the tail's
+     * size for the last one, the DRBG generates as many bytes as the array has.
+     */
+    private static byte[] draw(Generator generator, int length) {
+        byte[] chunk = length >= SCRATCH_SIZE ? generator.scratch : new byte[length];
+        generator.random.nextBytes(chunk);
+        return chunk;
+    }
+
+    /**
+     * Get a random int in {@code [0, bound)}.
+     *
+     * @param bound the bound, positive
+     * @return the int
+     */
+    public static int nextInt(int bound) {
+        Generator generator = GENERATORS.get();
+        generator.reseedIfDue(4);
+        return generator.random.nextInt(bound);
+    }
+
+    private static final class Generator {
+        private final SecureRandom random;
+        private final byte[] scratch = new byte[SCRATCH_SIZE];
+        private long bytesSinceReseed;
+        private long reseededAt = System.nanoTime();
+
+        private Generator() {
+            try {
+                random = SecureRandom.getInstance(
+                        "DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null)
+                );
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("DRBG is not available", e);
+            }
+        }
+
+        private void reseedIfDue(long bytes) {
+            bytesSinceReseed += bytes;
+            if (bytesSinceReseed > RESEED_BYTES || System.nanoTime() - reseededAt > RESEED_INTERVAL_NANOS) {
+                random.reseed();
+                bytesSinceReseed = bytes;
+                reseededAt = System.nanoTime();
+            }
+        }
+    }
+}
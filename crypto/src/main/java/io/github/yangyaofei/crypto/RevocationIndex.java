@@ -0,0 +1,683 @@
+package io.github.yangyaofei.crypto;
+
+import javax.annotation.Nullable;
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CRLException;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509Certificate;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Index of the certificates revoked by CRLs, answering lookups by issuer and serial number without locks.
+ * <p>
+ * CRLs are parsed with {@link DerParser}, PEM files with {@link PemBundleReader}, and their signature is verified
+ * against the issuer certificate given with them. The serial numbers of a CRL are kept in one byte array, indexed by
+ * an open addressing hash table of {@code int}s, so a lookup is a hash of the serial and about one probe, with no
+ * {@link BigInteger} or entry object per revoked certificate.
+ * <p>
+ * Per issuer the index holds the latest full CRL and the latest delta CRL on top of it, merged into one table. Loading a
+ * CRL builds the new table off to the side and swaps it in with one volatile write, readers see either the old or the
+ * new revocation set. Older CRLs than the loaded ones are ignored. A loaded CRL replaces the revocations of its issuer,
+ * so it must cover all certificates of the issuer: indirect CRLs, and CRLs whose issuing distribution point limits
+ * their scope, e.g. to a distribution point, to CA certificates or to some reasons, are rejected.
+ * <p>
+ * The index is a {@link ChainValidator.RevocationChecker}. Unless created with {@code requireCurrentCrl}, a
+ * certificate of an issuer without a CRL, or whose CRL is past its next update, passes.
+ */
+@SuppressWarnings("unused")
+public final class RevocationIndex implements ChainValidator.RevocationChecker {
+    private static final Oid CRL_NUMBER_OID = Oid.of("2.5.29.20");
+    private static final Oid REASON_CODE_OID = Oid.of("2.5.29.21");
+    private static final Oid DELTA_CRL_INDICATOR_OID = Oid.of("2.5.29.27");
+    private static final Oid ISSUING_DISTRIBUTION_POINT_OID = Oid.of("2.5.29.28");
+    private static final Oid CERTIFICATE_ISSUER_OID = Oid.of("2.5.29.29");
+    private static final String[] ISSUING_DISTRIBUTION_POINT_FIELDS = {
+            "distributionPoint", "onlyContainsUserCerts", "onlyContainsCACerts", "onlySomeReasons", "indirectCRL",
+            "onlyContainsAttributeCerts"
+    };
+    private static final Map<Oid, String> SIGNATURE_ALGORITHMS = Map.ofEntries(
+            Map.entry(Oid.of("1.2.840.113549.1.1.5"), "SHA1withRSA"),
+            Map.entry(Oid.of("1.2.840.113549.1.1.11"), "SHA256withRSA"),
+            Map.entry(Oid.of("1.2.840.113549.1.1.12"), "SHA384withRSA"),
+            Map.entry(Oid.of("1.2.840.113549.1.1.13"), "SHA512withRSA"),
+            Map.entry(Oid.of("1.2.840.10045.4.3.2"), "SHA256withECDSA"),
+            Map.entry(Oid.of("1.2.840.10045.4.3.3"), "SHA384withECDSA"),
+            Map.entry(Oid.of("1.2.840.10045.4.3.4"), "SHA512withECDSA"),
+            Map.entry(Oid.of("2.16.840.1.101.3.4.3.2"), "SHA256withDSA"),
+            Map.entry(Oid.of("1.3.101.112"), "Ed25519"),
+            Map.entry(Oid.of("1.3.101.113"), "Ed448")
+    );
+    private static final int BOOLEAN = 0x01;
+    private static final int BIT_STRING = 0x03;
+    private static final int ENUMERATED = 0x0A;
+    private static final int UTC_TIME = 0x17;
+    private static final int GENERALIZED_TIME = 0x18;
+    private static final int SEQUENCE_TAG = 0x30;
+    private static final int EXTENSIONS_TAG = 0xA0;
+    private static final int REMOVE_FROM_CRL = 8;
+
+    private final boolean requireCurrentCrl;
+    // replaced as a whole on every load, never modified
+    private volatile Map<X500Principal, IssuerState> issuers = Map.of();
+
+    /**
+     * A revoked certificate.
+     *
+     * @param serialNumber   the serial number
+     * @param revocationDate the revocation date
+     * @param reason         the reason, {@link CRLReason#UNSPECIFIED} if the CRL gives none
+     */
+    public record Revocation(BigInteger serialNumber, Instant revocationDate, CRLReason reason) {
+    }
+
+    /**
+     * A loaded CRL.
+     *
+     * @param issuer     the issuer
+     * @param number     the CRL number, null if the CRL has none
+     * @param baseNumber the number of the base CRL of a delta CRL, null for a full CRL
+     * @param thisUpdate the issue date
+     * @param nextUpdate the date of the next CRL, null if the CRL has none
+     * @param size       the number of revoked certificates in the CRL
+     */
+    public record CrlInfo(
+            X500Principal issuer,
+            @Nullable BigInteger number,
+            @Nullable BigInteger baseNumber,
+            Instant thisUpdate,
+            @Nullable Instant nextUpdate,
+            int size
+    ) {
+        /**
+         * If this is a delta CRL.
+         *
+         * @return if delta
+         */
+        public boolean isDelta() {
+            return baseNumber != null;
+        }
+    }
+
+    private record IssuerState(PublicKey issuerKey, Crl base, @Nullable Crl delta, RevokedSet revoked) {
+        @Nullable
+        Instant nextUpdate() {
+            return delta != null ? delta.info.nextUpdate : base.info.nextUpdate;
+        }
+    }
+
+    private record Crl(CrlInfo info, RevokedSet revoked) {
+    }
+
+    /**
+     * Instantiates a new index, which lets certificates pass if there is no current CRL of their issuer.
+     */
+    public RevocationIndex() {
+        this(false);
+    }
+
+    /**
+     * Instantiates a new index.
+     *
+     * @param requireCurrentCrl if {@link #check} fails when there is no CRL of the issuer, or it is past its next update
+     */
+    public RevocationIndex(boolean requireCurrentCrl) {
+        this.requireCurrentCrl = requireCurrentCrl;
+    }
+
+    /**
+     * Load the CRLs of a file, DER or PEM with any number of CRLs.
+     *
+     * @param path       the path to the CRL file
+     * @param issuerCert the issuer of the CRLs
+     * @return the number of CRLs applied, older CRLs than the loaded ones are skipped
+     * @throws IOException  if the file can't be read
+     * @throws CRLException if a CRL is malformed, of another issuer or its signature is not valid
+     */
+    public int load(Path path, X509Certificate issuerCert) throws IOException, CRLException {
+        byte[] content = Files.readAllBytes(path);
+        if (content.length > 0 && content[0] == SEQUENCE_TAG) {
+            return load(content, issuerCert) ? 1 : 0;
+        }
+        int applied = 0;
+        try (PemBundleReader reader = new PemBundleReader(new ByteArrayInputStream(content), path.toString())) {
+            for (PemBundleReader.Entry entry = reader.read(); entry != null; entry = reader.read()) {
+                if (entry.kind() == PemBundleReader.Kind.CRL && load(entry.der(), issuerCert)) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Load a DER encoded CRL, a full or a delta CRL.
+     *
+     * @param crl        the CRL
+     * @param issuerCert the issuer of the CRL
+     * @return if the CRL was applied, false if the index has a newer one, or if a delta CRL has no matching base CRL
+     * @throws CRLException if the CRL is malformed, of another issuer or its signature is not valid
+     */
+    public boolean load(byte[] crl, X509Certificate issuerCert) throws CRLException {
+        Crl parsed;
+        try {
+            parsed = parse(crl, issuerCert.getPublicKey());
+        } catch (IOException | IllegalStateException e) {
+            throw new CRLException("Malformed CRL", e);
+        }
+        X500Principal issuer = parsed.info.issuer;
+        if (!issuer.equals(issuerCert.getSubjectX500Principal())) {
+            throw new CRLException("CRL of " + issuer + " is not issued by " + issuerCert.getSubjectX500Principal());
+        }
+        synchronized (this) {
+            IssuerState current = issuers.get(issuer);
+            IssuerState next = apply(current, parsed, issuerCert.getPublicKey());
+            if (next == null) {
+                return false;
+            }
+            Map<X500Principal, IssuerState> copy = new HashMap<>(issuers);
+            copy.put(issuer, next);
+            issuers = Map.copyOf(copy);
+            return true;
+        }
+    }
+
+    /**
+     * Drop the CRLs of an issuer.
+     *
+     * @param issuer the issuer
+     */
+    public synchronized void remove(X500Principal issuer) {
+        Map<X500Principal, IssuerState> copy = new HashMap<>(issuers);
+        copy.remove(issuer);
+        issuers = Map.copyOf(copy);
+    }
+
+    /**
+     * Get the loaded full CRL of an issuer.
+     *
+     * @param issuer the issuer
+     * @return the CRL, empty if none is loaded
+     */
+    public Optional<CrlInfo> getBaseCrl(X500Principal issuer) {
+        IssuerState state = issuers.get(issuer);
+        return state == null ? Optional.empty() : Optional.of(state.base.info);
+    }
+
+    /**
+     * Get the loaded delta CRL of an issuer.
+     *
+     * @param issuer the issuer
+     * @return the CRL, empty if none is loaded
+     */
+    public Optional<CrlInfo> getDeltaCrl(X500Principal issuer) {
+        IssuerState state = issuers.get(issuer);
+        return state == null || state.delta == null ? Optional.empty() : Optional.of(state.delta.info);
+    }
+
+    /**
+     * If a certificate is revoked by the loaded CRLs, on hold included.
+     *
+     * @param issuer       the issuer of the certificate
+     * @param serialNumber the serial number of the certificate
+     * @return if revoked
+     */
+    public boolean isRevoked(X500Principal issuer, BigInteger serialNumber) {
+        IssuerState state = issuers.get(issuer);
+        return state != null && state.revoked.indexOf(serialNumber.toByteArray()) >= 0;
+    }
+
+    /**
+     * If a certificate is revoked by the loaded CRLs, on hold included.
+     *
+     * @param certificate the certificate
+     * @return if revoked
+     */
+    public boolean isRevoked(X509Certificate certificate) {
+        return isRevoked(certificate.getIssuerX500Principal(), certificate.getSerialNumber());
+    }
+
+    /**
+     * Get the revocation of a certificate.
+     *
+     * @param issuer       the issuer of the certificate
+     * @param serialNumber the serial number of the certificate
+     * @return the revocation, empty if the certificate is not revoked
+     */
+    public Optional<Revocation> getRevocation(X500Principal issuer, BigInteger serialNumber) {
+        IssuerState state = issuers.get(issuer);
+        if (state == null) {
+            return Optional.empty();
+        }
+        int index = state.revoked.indexOf(serialNumber.toByteArray());
+        if (index < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new Revocation(serialNumber, Instant.ofEpochMilli(state.revoked.dates[index]), reason(state.revoked.reasons[index])));
+    }
+
+    /**
+     * Check a certificate against the CRL of its issuer.
+     *
+     * @param certificate the certificate
+     * @param issuer      its issuer in the path
+     * @throws CertificateRevokedException if the certificate is revoked
+     * @throws CertificateException        if a current CRL is required, and there is none of a key of the issuer
+     */
+    @Override
+    public void check(X509Certificate certificate, X509Certificate issuer) throws CertificateException {
+        X500Principal issuerName = certificate.getIssuerX500Principal();
+        IssuerState state = issuers.get(issuerName);
+        if (state == null || !state.issuerKey.equals(issuer.getPublicKey())) {
+            if (requireCurrentCrl) {
+                throw new CertificateException("No CRL of " + issuerName);
+            }
+            return;
+        }
+        Instant nextUpdate = state.nextUpdate();
+        if (requireCurrentCrl && nextUpdate != null && Instant.now().isAfter(nextUpdate)) {
+            throw new CertificateException("CRL of " + issuerName + " is past its next update " + nextUpdate);
+        }
+        int index = state.revoked.indexOf(certificate.getSerialNumber().toByteArray());
+        if (index >= 0) {
+            throw new CertificateRevokedException(
+                    new Date(state.revoked.dates[index]), reason(state.revoked.reasons[index]), issuerName, Map.of()
+            );
+        }
+    }
+
+    @Nullable
+    private static IssuerState apply(@Nullable IssuerState current, Crl crl, PublicKey issuerKey) {
+        CrlInfo info = crl.info;
+        if (!info.isDelta()) {
+            if (current != null && !isNewer(info, current.base.info)) {
+                return null;
+            }
+            // keep the delta if it is newer than the new base and applies to it
+            if (current != null && current.delta != null
+                    && isNewer(current.delta.info, info)
+                    && info.number != null
+                    && current.delta.info.baseNumber.compareTo(info.number) <= 0) {
+                return new IssuerState(issuerKey, crl, current.delta, RevokedSet.merge(crl.revoked, current.delta.revoked));
+            }
+            return new IssuerState(issuerKey, crl, null, crl.revoked.withoutRemoved());
+        }
+        // a delta older than the base would undo the changes the base has since
+        if (current == null || current.base.info.number == null
+                || current.base.info.number.compareTo(info.baseNumber) < 0
+                || !isNewer(info, current.base.info)
+                || current.delta != null && !isNewer(info, current.delta.info)) {
+            return null;
+        }
+        // a delta lists all changes since its base, it replaces the previous delta
+        return new IssuerState(issuerKey, current.base, crl, RevokedSet.merge(current.base.revoked, crl.revoked));
+    }
+
+    private static boolean isNewer(CrlInfo crl, CrlInfo than) {
+        if (crl.number != null && than.number != null) {
+            return crl.number.compareTo(than.number) > 0;
+        }
+        return crl.thisUpdate.isAfter(than.thisUpdate);
+    }
+
+    private static CRLReason reason(byte code) {
+        CRLReason[] reasons = CRLReason.values();
+        return code >= 0 && code < reasons.length ? reasons[code] : CRLReason.UNSPECIFIED;
+    }
+
+    /**
+     * Parse and verify a CRL, see <a href="https://tools.ietf.org/html/rfc5280#section-5.1">RFC 5280</a>.
+     */
+    private static Crl parse(byte[] crl, PublicKey issuerKey) throws IOException, CRLException {
+        DerParser parser = new DerParser(crl).readAsn1Object(DerParser.SEQUENCE).getParser();
+        int tbsStart = parser.position();
+        DerParser.Asn1Object tbs = parser.readAsn1Object(DerParser.SEQUENCE);
+        int tbsEnd = parser.position();
+        DerParser.Asn1Object algorithm = parser.readAsn1Object(DerParser.SEQUENCE);
+        DerParser.Asn1Object signature = parser.readAsn1Object(BIT_STRING);
+        verify(crl, tbsStart, tbsEnd - tbsStart, algorithm, signature, issuerKey);
+
+        DerParser fields = tbs.getParser();
+        DerParser.Asn1Object field = fields.readAsn1Object();
+        if (field.getType() == DerParser.INTEGER) {
+            field = fields.readAsn1Object(); // version
+        }
+        if (!Arrays.equals(field.getValue(), algorithm.getValue())) {
+            throw new CRLException("Signature algorithms of the CRL differ");
+        }
+        int issuerStart = fields.position();
+        fields.readAsn1Object(DerParser.SEQUENCE);
+        X500Principal issuer = new X500Principal(Arrays.copyOfRange(crl, issuerStart, fields.position()));
+        Instant thisUpdate = time(fields.readAsn1Object());
+        Instant nextUpdate = null;
+        DerParser.Asn1Object revoked = null;
+        BigInteger number = null;
+        BigInteger baseNumber = null;
+        while (fields.hasRemaining()) {
+            field = fields.readAsn1Object();
+            if (field.tag == UTC_TIME || field.tag == GENERALIZED_TIME) {
+                nextUpdate = time(field);
+            } else if (field.tag == SEQUENCE_TAG) {
+                revoked = field;
+            } else if (field.tag == EXTENSIONS_TAG) {
+                DerParser extensions = field.getParser().readAsn1Object(DerParser.SEQUENCE).getParser();
+                while (extensions.hasRemaining()) {
+                    DerParser extension = extensions.readAsn1Object(DerParser.SEQUENCE).getParser();
+                    DerParser.Asn1Object id = extension.readAsn1Object(DerParser.OBJECT_OID);
+                    boolean critical = false;
+                    DerParser.Asn1Object value = extension.readAsn1Object();
+                    if (value.tag == BOOLEAN) {
+                        critical = value.getLength() == 1 && value.getValueBuffer().get() != 0;
+                        value = extension.readAsn1Object();
+                    }
+                    if (id.isOid(CRL_NUMBER_OID)) {
+                        number = value.getEncapsulatedParser().readAsn1Object().getInteger();
+                    } else if (id.isOid(DELTA_CRL_INDICATOR_OID)) {
+                        baseNumber = value.getEncapsulatedParser().readAsn1Object().getInteger();
+                    } else if (id.isOid(ISSUING_DISTRIBUTION_POINT_OID)) {
+                        checkScope(value);
+                    } else if (critical) {
+                        throw new CRLException("Unsupported critical CRL extension " + id.getObjectIdentifier());
+                    }
+                }
+            }
+        }
+        if (baseNumber != null && number == null) {
+            throw new CRLException("Delta CRL without CRL number");
+        }
+        RevokedSet revokedSet = revoked == null ? RevokedSet.EMPTY : RevokedSet.parse(revoked);
+        return new Crl(new CrlInfo(issuer, number, baseNumber, thisUpdate, nextUpdate, revokedSet.size()), revokedSet);
+    }
+
+    /**
+     * Reject an issuing distribution point which limits the scope of the CRL, in place of the full CRL it would lift
+     * the revocations of the certificates out of its scope.
+     */
+    private static void checkScope(DerParser.Asn1Object issuingDistributionPoint) throws IOException, CRLException {
+        DerParser fields = issuingDistributionPoint.getEncapsulatedParser().readAsn1Object(DerParser.SEQUENCE).getParser();
+        while (fields.hasRemaining()) {
+            DerParser.Asn1Object field = fields.readAsn1Object();
+            int number = field.getType();
+            boolean limited = switch (number) {
+                // BOOLEAN DEFAULT FALSE, DER leaves out false, but don't rely on it
+                case 1, 2, 4, 5 -> field.getLength() != 1 || field.getValueBuffer().get() != 0;
+                default -> true;
+            };
+            if (limited) {
+                String name = number < ISSUING_DISTRIBUTION_POINT_FIELDS.length
+                        ? ISSUING_DISTRIBUTION_POINT_FIELDS[number]
+                        : "[" + number + "]";
+                throw new CRLException("Unsupported CRL scope: issuing distribution point with " + name);
+            }
+        }
+    }
+
+    private static void verify(
+            byte[] crl,
+            int tbsOffset,
+            int tbsLength,
+            DerParser.Asn1Object algorithm,
+            DerParser.Asn1Object signature,
+            PublicKey issuerKey
+    ) throws IOException, CRLException {
+        Oid algorithmOid = algorithm.getParser().readAsn1Object().getObjectIdentifier();
+        String algorithmName = SIGNATURE_ALGORITHMS.get(algorithmOid);
+        if (algorithmName == null) {
+            throw new CRLException("Unsupported CRL signature algorithm " + algorithmOid);
+        }
+        byte[] bits = signature.getValue();
+        if (bits.length == 0 || bits[0] != 0) {
+            throw new CRLException("Malformed CRL signature");
+        }
+        try {
+            Signature verifier = Signature.getInstance(algorithmName);
+            verifier.initVerify(issuerKey);
+            verifier.update(crl, tbsOffset, tbsLength);
+            if (!verifier.verify(bits, 1, bits.length - 1)) {
+                throw new CRLException("CRL signature is not valid");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new CRLException("Can't verify the CRL signature", e);
+        }
+    }
+
+    private static Instant time(DerParser.Asn1Object time) throws IOException {
+        // parsed by hand, a CRL has a time per entry
+        ByteBuffer value = time.getValueBuffer();
+        int year;
+        if (time.tag == UTC_TIME && value.remaining() == 13) {
+            year = digits(value, 2);
+            // two digit years are 1950 to 2049
+            year += year < 50 ? 2000 : 1900;
+        } else if (time.tag == GENERALIZED_TIME && value.remaining() == 15) {
+            year = digits(value, 4);
+        } else {
+            throw new IOException("Invalid DER: object is not a DER time");
+        }
+        int month = digits(value, 2);
+        int day = digits(value, 2);
+        int hour = digits(value, 2);
+        int minute = digits(value, 2);
+        int second = digits(value, 2);
+        if (value.get() != 'Z') {
+            throw new IOException("Invalid DER: time is not UTC");
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            throw new IOException("Invalid DER: malformed time", e);
+        }
+    }
+
+    private static int digits(ByteBuffer value, int count) throws IOException {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = value.get() - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Invalid DER: malformed time");
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * An immutable set of revoked serial numbers, as DER integer contents one after another, with their dates and
+     * reasons, and an open addressing table of their indexes.
+     */
+    private static final class RevokedSet {
+        private static final RevokedSet EMPTY = new RevokedSet(new byte[0], new int[]{0}, new long[0], new byte[0]);
+
+        private final byte[] serials;
+        // start of serial i at offsets[i], the end at offsets[i + 1]
+        private final int[] offsets;
+        private final long[] dates;
+        private final byte[] reasons;
+        // index + 1 of the serial in the slot, 0 for an empty slot
+        private final int[] table;
+        private final int mask;
+
+        private RevokedSet(byte[] serials, int[] offsets, long[] dates, byte[] reasons) {
+            this.serials = serials;
+            this.offsets = offsets;
+            this.dates = dates;
+            this.reasons = reasons;
+            // at most half full
+            int capacity = Integer.highestOneBit(Math.max(2, dates.length) * 2 - 1) * 2;
+            this.table = new int[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < dates.length; i++) {
+                int slot = hash(serials, offsets[i], offsets[i + 1] - offsets[i]) & mask;
+                while (table[slot] != 0) {
+                    slot = slot + 1 & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+
+        int size() {
+            return dates.length;
+        }
+
+        int indexOf(byte[] serial) {
+            return indexOf(serial, 0, serial.length);
+        }
+
+        int indexOf(byte[] serial, int offset, int length) {
+            int slot = hash(serial, offset, length) & mask;
+            int entry;
+            while ((entry = table[slot]) != 0) {
+                int index = entry - 1;
+                if (Arrays.equals(serials, offsets[index], offsets[index + 1], serial, offset, offset + length)) {
+                    return index;
+                }
+                slot = slot + 1 & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * The entries without the ones removed from the CRL, which only appear in delta CRLs.
+         */
+        RevokedSet withoutRemoved() {
+            Builder builder = new Builder(size());
+            for (int i = 0; i < size(); i++) {
+                if (reasons[i] != REMOVE_FROM_CRL) {
+                    builder.add(this, i);
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * The entries of the base which the delta doesn't list, and the entries of the delta which are not removed.
+         */
+        static RevokedSet merge(RevokedSet base, RevokedSet delta) {
+            Builder builder = new Builder(base.size() + delta.size());
+            for (int i = 0; i < base.size(); i++) {
+                if (base.reasons[i] != REMOVE_FROM_CRL
+                        && delta.indexOf(base.serials, base.offsets[i], base.offsets[i + 1] - base.offsets[i]) < 0) {
+                    builder.add(base, i);
+                }
+            }
+            for (int i = 0; i < delta.size(); i++) {
+                if (delta.reasons[i] != REMOVE_FROM_CRL) {
+                    builder.add(delta, i);
+                }
+            }
+            return builder.build();
+        }
+
+        static RevokedSet parse(DerParser.Asn1Object revokedCertificates) throws IOException, CRLException {
+            Builder builder = new Builder(16);
+            DerParser entries = revokedCertificates.getParser();
+            while (entries.hasRemaining()) {
+                DerParser entry = entries.readAsn1Object(DerParser.SEQUENCE).getParser();
+                DerParser.Asn1Object serial = entry.readAsn1Object(DerParser.INTEGER);
+                long date = time(entry.readAsn1Object()).toEpochMilli();
+                byte reason = (byte) CRLReason.UNSPECIFIED.ordinal();
+                if (entry.hasRemaining()) {
+                    DerParser extensions = entry.readAsn1Object(DerParser.SEQUENCE).getParser();
+                    while (extensions.hasRemaining()) {
+                        DerParser extension = extensions.readAsn1Object(DerParser.SEQUENCE).getParser();
+                        DerParser.Asn1Object id = extension.readAsn1Object(DerParser.OBJECT_OID);
+                        boolean critical = false;
+                        DerParser.Asn1Object value = extension.readAsn1Object();
+                        if (value.tag == BOOLEAN) {
+                            critical = value.getLength() == 1 && value.getValueBuffer().get() != 0;
+                            value = extension.readAsn1Object();
+                        }
+                        if (id.isOid(REASON_CODE_OID)) {
+                            DerParser.Asn1Object code = value.getEncapsulatedParser().readAsn1Object(ENUMERATED);
+                            reason = code.getValueBuffer().get();
+                        } else if (id.isOid(CERTIFICATE_ISSUER_OID)) {
+                            // the entry and the ones after it are of another issuer
+                            throw new CRLException("Unsupported indirect CRL: entry with a certificate issuer");
+                        } else if (critical) {
+                            throw new CRLException("Unsupported critical CRL entry extension " + id.getObjectIdentifier());
+                        }
+                    }
+                }
+                builder.add(serial.getValueBuffer(), date, reason);
+            }
+            return builder.build();
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int hash = 1;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            // spread the bits, the slot is taken from the low ones
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            return hash ^ hash >>> 13;
+        }
+
+        private static final class Builder {
+            private byte[] serials;
+            private int serialsLength;
+            private int[] offsets;
+            private long[] dates;
+            private byte[] reasons;
+            private int size;
+
+            private Builder(int capacity) {
+                serials = new byte[Math.max(16, capacity * 16)];
+                offsets = new int[capacity + 1];
+                dates = new long[capacity];
+                reasons = new byte[capacity];
+            }
+
+            void add(RevokedSet set, int index) {
+                int start = set.offsets[index];
+                add(ByteBuffer.wrap(set.serials, start, set.offsets[index + 1] - start), set.dates[index], set.reasons[index]);
+            }
+
+            void add(ByteBuffer serial, long date, byte reason) {
+                if (size == dates.length) {
+                    int capacity = Math.max(16, size * 2);
+                    offsets = Arrays.copyOf(offsets, capacity + 1);
+                    dates = Arrays.copyOf(dates, capacity);
+                    reasons = Arrays.copyOf(reasons, capacity);
+                }
+                int length = serial.remaining();
+                if (serialsLength + length > serials.length) {
+                    serials = Arrays.copyOf(serials, Math.max(serials.length * 2, serialsLength + length));
+                }
+                serial.get(serials, serialsLength, length);
+                serialsLength += length;
+                dates[size] = date;
+                reasons[size] = reason;
+                offsets[++size] = serialsLength;
+            }
+
+            RevokedSet build() {
+                return new RevokedSet(
+                        Arrays.copyOf(serials, serialsLength),
+                        Arrays.copyOf(offsets, size + 1),
+                        Arrays.copyOf(dates, size),
+                        Arrays.copyOf(reasons, size)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.yangyaofei.crypto;
+
+import java.util.Objects;
+
+/**
+ * Fixed length random secrets over an alphabet, e.g. API tokens, written straight into a {@code char[]} or an ASCII
+ * {@code byte[]}.
+ * <p>
+ * Every character takes the smallest number of bits which covers the alphabet from a buffered stream of
+ * {@link RandomSource} bytes. For alphabets of 16, 32 or 64 characters every draw is used, for others a draw outside
+ * of the alphabet is rejected and drawn again, so every character of the alphabet is equally likely, unlike taking the
+ * draw modulo the alphabet size. The random bytes are buffered per thread, a 32 character hex token consumes 16 of
+ * them.
+ */
+@SuppressWarnings("unused")
+public final class SecretFormat {
+    /**
+     * Lower case hex, 4 bits per character.
+     */
+    public static final SecretFormat HEX = new SecretFormat("0123456789abcdef");
+    /**
+     * The URL and file name safe Base64 alphabet of RFC 4648 without padding, 6 bits per character.
+     */
+    public static final SecretFormat BASE64URL = new SecretFormat("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_");
+    /**
+     * The Base32 alphabet of RFC 4648 without padding, 5 bits per character.
+     */
+    public static final SecretFormat BASE32 = new SecretFormat("ABCDEFGHIJKLMNOPQRSTUVWXYZ234567");
+    /**
+     * Letters and digits, about 5.95 bits per character.
+     */
+    public static final SecretFormat ALPHANUMERIC = new SecretFormat("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+
+    private static final int POOL_SIZE = 64;
+    private static final ThreadLocal<BitPool> POOLS = ThreadLocal.withInitial(BitPool::new);
+
+    private final char[] alphabet;
+    private final int bits;
+
+    private SecretFormat(String alphabet) {
+        this.alphabet = alphabet.toCharArray();
+        this.bits = 32 - Integer.numberOfLeadingZeros(this.alphabet.length - 1);
+    }
+
+    /**
+     * Get a format of a custom alphabet.
+     *
+     * @param alphabet 2 to 256 distinct printable ASCII characters
+     * @return the format
+     */
+    public static SecretFormat of(String alphabet) {
+        if (alphabet.length() < 2 || alphabet.length() > 256) {
+            throw new IllegalArgumentException("Alphabet must have 2 to 256 characters: " + alphabet.length());
+        }
+        boolean[] seen = new boolean[128];
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (c <= ' ' || c >= 127) {
+                throw new IllegalArgumentException("Alphabet must be printable ASCII: " + (int) c);
+            }
+            if (seen[c]) {
+                throw new IllegalArgumentException("Duplicate character in alphabet: " + c);
+            }
+            seen[c] = true;
+        }
+        return new SecretFormat(alphabet);
+    }
+
+    /**
+     * Get the alphabet.
+     *
+     * @return the alphabet
+     */
+    public String getAlphabet() {
+        return new String(alphabet);
+    }
+
+    /**
+     * Get the number of characters for a secret of at least the given entropy.
+     *
+     * @param entropyBits the entropy in bits, e.g. 128
+     * @return the length
+     */
+    public int lengthFor(int entropyBits) {
+        return (int) Math.ceil(entropyBits / (Math.log(alphabet.length) / Math.log(2)) - 1e-9);
+    }
+
+    /**
+     * Generate a secret.
+     *
+     * @param length the number of characters
+     * @return the secret
+     */
+    public String generate(int length) {
+        char[] chars = new char[length];
+        generate(chars, 0, length);
+        return new String(chars);
+    }
+
+    /**
+     * Generate a secret into a char array, e.g. to clear it after use.
+     *
+     * @param out    the output
+     * @param offset the offset in the output
+     * @param length the number of characters
+     */
+    public void generate(char[] out, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, out.length);
+        BitPool pool = POOLS.get();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            out[i] = alphabet[nextIndex(pool)];
+        }
+    }
+
+    /**
+     * Generate a secret into a byte array as ASCII.
+     *
+     * @param out    the output
+     * @param offset the offset in the output
+     * @param length the number of characters
+     */
+    public void generate(byte[] out, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, out.length);
+        BitPool pool = POOLS.get();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            out[i] = (byte) alphabet[nextIndex(pool)];
+        }
+    }
+
+    private int nextIndex(BitPool pool) {
+        int index;
+        do {
+            index = pool.next(bits);
+        } while (index >= alphabet.length);
+        return index;
+    }
+
+    private static final class BitPool {
+        private final byte[] bytes = new byte[POOL_SIZE];
+        private int position = POOL_SIZE;
+        private int buffer;
+        private int count;
+
+        private int next(int bits) {
+            while (count < bits) {
+                if (position == POOL_SIZE) {
+                    RandomSource.nextBytes(bytes);
+                    position = 0;
+                }
+                buffer = buffer << 8 | bytes[position] & 0xFF;
+                // consumed bytes are not kept
+                bytes[position++] = 0;
+                count += 8;
+            }
+            count -= bits;
+            return buffer >>> count & (1 << bits) - 1;
+        }
+    }
+}
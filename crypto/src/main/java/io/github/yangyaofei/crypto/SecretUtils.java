@@ -1,9 +1,7 @@
 package io.github.yangyaofei.crypto;
 
-import lombok.SneakyThrows;
-
 import java.math.BigInteger;
-import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * Secret utils
@@ -12,17 +10,48 @@ import java.security.SecureRandom;
 
 public class SecretUtils {
     /**
-     * 随机密码生成
+     * 随机密码生成, the length varies as leading zeros are dropped, see {@link #genSecret(SecretFormat, int)} for a fixed
+     * length
      *
      * @param bit the bit
      * @return the string
      */
-    @SneakyThrows
     public static String genSecret(int bit) {
         byte[] byteSecret = new byte[bit];
-        SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-        random.nextBytes(byteSecret);
+        RandomSource.nextBytes(byteSecret);
         BigInteger bigInteger = new BigInteger(byteSecret).abs();
         return bigInteger.toString(16);
     }
+
+    /**
+     * 定长随机密码生成, e.g. {@code genSecret(SecretFormat.BASE64URL, 43)} for a token of 256 bits.
+     *
+     * @param format the alphabet
+     * @param length the number of characters
+     * @return the secret
+     */
+    public static String genSecret(SecretFormat format, int length) {
+        return format.generate(length);
+    }
+
+    /**
+     * 批量随机密码生成, the random bytes of all secrets are drawn in one call, see {@link #genSecret(int)}.
+     *
+     * @param bit   the bit
+     * @param count the number of secrets
+     * @return the secrets
+     */
+    public static String[] genSecrets(int bit, int count) {
+        if (bit <= 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid bit " + bit + " or count " + count);
+        }
+        byte[] byteSecrets = new byte[Math.multiplyExact(bit, count)];
+        RandomSource.nextBytes(byteSecrets);
+        String[] secrets = new String[count];
+        for (int i = 0; i < count; i++) {
+            secrets[i] = new BigInteger(byteSecrets, i * bit, bit).abs().toString(16);
+        }
+        Arrays.fill(byteSecrets, (byte) 0);
+        return secrets;
+    }
 }
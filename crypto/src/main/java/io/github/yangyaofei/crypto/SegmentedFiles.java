@@ -0,0 +1,167 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parallel encryption and decryption of files in the {@link SegmentedStream} format.
+ * <p>
+ * Segments are sealed on their own and sit at fixed offsets, so the file is split into tasks of consecutive segments
+ * which run on the given executor, every task owns its cipher and works on its own region. The output is in order
+ * without any reordering step.
+ * <p>
+ * The regions are memory-mapped on both sides and the cipher works on the mapped buffers directly, so the data is not
+ * copied through heap buffers and there is no read or write call per segment.
+ */
+final class SegmentedFiles {
+    // plaintext bytes handled by one task, big enough to amortize the scheduling, small enough to balance the cores
+    private static final int TASK_BYTES = 4 * 1024 * 1024;
+
+    private SegmentedFiles() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    @FunctionalInterface
+    private interface SegmentTask {
+        void run(long first, long count) throws IOException, GeneralSecurityException;
+    }
+
+    static void encrypt(
+            FileChannel source, FileChannel target, SecretKey key, int segmentSize, AeadAlgorithm algorithm, Executor executor
+    ) throws IOException, GeneralSecurityException {
+        SegmentedStream.Header header = SegmentedStream.newHeader(algorithm, segmentSize);
+        SegmentedStream.newCipher(header); // fail early if the algorithm is missing
+        long size = source.size();
+        long segments = Math.max(1, (size + segmentSize - 1) / segmentSize);
+        writeFully(target, header.encoded(), 0, header.encoded().length);
+        long total = SegmentedStream.ciphertextLength(size, segmentSize);
+        presize(target, total);
+        run(segments, segmentSize, executor, (first, count) -> {
+            Cipher cipher = SegmentedStream.newCipher(header);
+            long position = first * segmentSize;
+            long end = Math.min(size, (first + count) * segmentSize);
+            long offset = header.segmentOffset(first);
+            long sealedEnd = first + count == segments ? total : header.segmentOffset(first + count);
+            MappedByteBuffer in = source.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+            MappedByteBuffer out = target.map(FileChannel.MapMode.READ_WRITE, offset, sealedEnd - offset);
+            for (long i = first; i < first + count; i++) {
+                int length = (int) Math.min(segmentSize, size - i * segmentSize);
+                in.limit(in.position() + length);
+                SegmentedStream.seal(cipher, key, header, i, i == segments - 1, in, out);
+            }
+        });
+        target.truncate(total);
+    }
+
+    static void decrypt(FileChannel source, FileChannel target, SecretKey key, Executor executor)
+            throws IOException, GeneralSecurityException {
+        byte[] encoded = new byte[SegmentedStream.HEADER_LENGTH];
+        readFully(source, encoded, 0, encoded.length);
+        SegmentedStream.Header header = SegmentedStream.readHeader(new ByteArrayInputStream(encoded));
+        SegmentedStream.newCipher(header); // fail early if the algorithm is missing
+        int segmentSize = header.segmentSize();
+        long size = source.size();
+        long plaintextLength = SegmentedStream.plaintextLength(size, segmentSize);
+        long segments = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+        presize(target, plaintextLength);
+        run(segments, segmentSize, executor, (first, count) -> {
+            Cipher cipher = SegmentedStream.newCipher(header);
+            long offset = header.segmentOffset(first);
+            long sealedEnd = first + count == segments ? size : header.segmentOffset(first + count);
+            long position = first * segmentSize;
+            long end = Math.min(plaintextLength, (first + count) * segmentSize);
+            MappedByteBuffer in = source.map(FileChannel.MapMode.READ_ONLY, offset, sealedEnd - offset);
+            MappedByteBuffer out = target.map(FileChannel.MapMode.READ_WRITE, position, end - position);
+            for (long i = first; i < first + count; i++) {
+                int length = (int) Math.min(segmentSize + SegmentedStream.TAG_LENGTH, size - header.segmentOffset(i));
+                in.limit(in.position() + length);
+                try {
+                    SegmentedStream.open(cipher, key, header, i, i == segments - 1, in, out);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Invalid segmented stream: segment " + i + " failed authentication", e);
+                }
+            }
+        });
+        target.truncate(plaintextLength);
+    }
+
+    /**
+     * Split the segments into tasks, run them on the executor and wait for all of them.
+     * <p>
+     * After the first failure the tasks not yet started are skipped, and the failure is rethrown.
+     */
+    private static void run(long segments, int segmentSize, Executor executor, SegmentTask task)
+            throws IOException, GeneralSecurityException {
+        long perTask = Math.max(1, TASK_BYTES / segmentSize);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long first = 0; first < segments; first += perTask) {
+            long start = first;
+            long count = Math.min(perTask, segments - first);
+            futures.add(CompletableFuture.runAsync(() -> {
+                if (failed.get()) {
+                    return;
+                }
+                try {
+                    task.run(start, count);
+                } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                    failed.set(true);
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof GeneralSecurityException securityException) {
+                throw securityException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    static void readFully(FileChannel channel, byte[] bytes, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Grow the target to its final length up front, so the tasks map regions of an existing file and don't race to
+     * extend it, a longer target is cut at the end.
+     */
+    private static void presize(FileChannel target, long length) throws IOException {
+        if (length > 0 && target.size() < length) {
+            writeFully(target, new byte[1], length - 1, 1);
+        }
+    }
+
+    static void writeFully(FileChannel channel, byte[] bytes, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
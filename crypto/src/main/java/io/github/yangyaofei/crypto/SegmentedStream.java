@@ -0,0 +1,374 @@
+package io.github.yangyaofei.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Segmented AEAD stream format, a "STREAM" construction on top of an {@link AeadAlgorithm}.
+ * <p>
+ * The plaintext is cut into fixed size segments and every segment is sealed on its own, with a nonce built from a
+ * random per-stream prefix, the segment counter and a last segment flag. Both sides only hold one segment in memory,
+ * and any segment can be decrypted without reading the ones before it.
+ * <pre>
+ * header:  | version 1B | algorithm 1B | segment size 4B | nonce prefix 7B |
+ * segment: | ciphertext (segment size, the last one may be shorter) | tag 16B |
+ * nonce:   | nonce prefix 7B | segment counter 4B | last flag 1B |
+ * </pre>
+ * The header is authenticated as associated data of every segment, so truncating, reordering or changing the
+ * segment size fails the tag check.
+ */
+final class SegmentedStream {
+    static final byte VERSION = 1;
+    static final int NONCE_PREFIX_LENGTH = 7;
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+    static final int HEADER_LENGTH = 2 + 4 + NONCE_PREFIX_LENGTH;
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    static final int MIN_SEGMENT_SIZE = 1024;
+    static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long MAX_SEGMENTS = 1L << 32;
+
+    private SegmentedStream() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * The stream header, kept in its encoded form because it is the associated data of every segment.
+     *
+     * @param algorithm   the AEAD algorithm of the segments
+     * @param segmentSize the plaintext size of a segment
+     * @param noncePrefix the random nonce prefix of the stream
+     * @param encoded     the encoded header
+     */
+    record Header(AeadAlgorithm algorithm, int segmentSize, byte[] noncePrefix, byte[] encoded) {
+
+        /**
+         * Offset of the given segment in the ciphertext, header included.
+         */
+        long segmentOffset(long index) {
+            return HEADER_LENGTH + index * (segmentSize + (long) TAG_LENGTH);
+        }
+    }
+
+    static Header newHeader(AeadAlgorithm algorithm, int segmentSize) {
+        checkSegmentSize(segmentSize);
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        RandomSource.nextBytes(prefix);
+        byte[] encoded = new byte[HEADER_LENGTH];
+        encoded[0] = VERSION;
+        encoded[1] = algorithm.id();
+        putInt(encoded, 2, segmentSize);
+        System.arraycopy(prefix, 0, encoded, 6, NONCE_PREFIX_LENGTH);
+        return new Header(algorithm, segmentSize, prefix, encoded);
+    }
+
+    static Header readHeader(InputStream in) throws IOException {
+        byte[] encoded = new byte[HEADER_LENGTH];
+        if (in.readNBytes(encoded, 0, HEADER_LENGTH) < HEADER_LENGTH) {
+            throw new IOException("Invalid segmented stream: header too short");
+        }
+        if (encoded[0] != VERSION) {
+            throw new IOException("Invalid segmented stream: unsupported version " + encoded[0]);
+        }
+        AeadAlgorithm algorithm;
+        try {
+            algorithm = AeadAlgorithm.fromId(encoded[1]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid segmented stream: unsupported algorithm " + encoded[1], e);
+        }
+        int segmentSize = getInt(encoded, 2);
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid segmented stream: segment size " + segmentSize + " out of range");
+        }
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        System.arraycopy(encoded, 6, prefix, 0, NONCE_PREFIX_LENGTH);
+        return new Header(algorithm, segmentSize, prefix, encoded);
+    }
+
+    static void checkSegmentSize(int segmentSize) {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException(
+                    "Segment size must be between " + MIN_SEGMENT_SIZE + " and " + MAX_SEGMENT_SIZE + " but was " + segmentSize
+            );
+        }
+    }
+
+    static Cipher newCipher(Header header) throws GeneralSecurityException {
+        return Cipher.getInstance(header.algorithm().getTransformation());
+    }
+
+    /**
+     * Length of the sealed stream, header included, for a plaintext of the given length.
+     */
+    static long ciphertextLength(long plaintextLength, int segmentSize) {
+        long segments = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+        return HEADER_LENGTH + plaintextLength + segments * TAG_LENGTH;
+    }
+
+    /**
+     * Length of the plaintext for a sealed stream of the given length, header included.
+     *
+     * @throws IOException if the length can't be a valid sealed stream
+     */
+    static long plaintextLength(long ciphertextLength, int segmentSize) throws IOException {
+        long payload = ciphertextLength - HEADER_LENGTH;
+        long sealedSegment = segmentSize + (long) TAG_LENGTH;
+        long segments = (payload + sealedSegment - 1) / sealedSegment;
+        long lastSegment = payload - (segments - 1) * sealedSegment;
+        if (payload < TAG_LENGTH || lastSegment < TAG_LENGTH) {
+            throw new IOException("Invalid segmented stream: truncated segment");
+        }
+        return payload - segments * TAG_LENGTH;
+    }
+
+    /**
+     * Seal one segment.
+     *
+     * @return the number of bytes written to {@code out}, always {@code len + TAG_LENGTH}
+     */
+    static int seal(
+            Cipher cipher, SecretKey key, Header header, long index, boolean last,
+            byte[] in, int off, int len, byte[] out, int outOff
+    ) throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key, header.algorithm().parameterSpec(nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        return cipher.doFinal(in, off, len, out, outOff);
+    }
+
+    /**
+     * Open one sealed segment, the tag is checked before any plaintext is returned.
+     *
+     * @return the number of plaintext bytes written to {@code out}
+     */
+    static int open(
+            Cipher cipher, SecretKey key, Header header, long index, boolean last,
+            byte[] in, int off, int len, byte[] out, int outOff
+    ) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key, header.algorithm().parameterSpec(nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        return cipher.doFinal(in, off, len, out, outOff);
+    }
+
+    /**
+     * Seal one segment from the remaining bytes of {@code in} into {@code out}, both may be direct or mapped buffers.
+     */
+    static int seal(Cipher cipher, SecretKey key, Header header, long index, boolean last, ByteBuffer in, ByteBuffer out)
+            throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key, header.algorithm().parameterSpec(nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        return cipher.doFinal(in, out);
+    }
+
+    /**
+     * Open one sealed segment from the remaining bytes of {@code in} into {@code out}, both may be direct or mapped buffers.
+     */
+    static int open(Cipher cipher, SecretKey key, Header header, long index, boolean last, ByteBuffer in, ByteBuffer out)
+            throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key, header.algorithm().parameterSpec(nonce(header, index, last)));
+        cipher.updateAAD(header.encoded());
+        return cipher.doFinal(in, out);
+    }
+
+    static byte[] nonce(Header header, long index, boolean last) {
+        if (index < 0 || index >= MAX_SEGMENTS) {
+            throw new IllegalStateException("Segmented stream is too long, segment counter overflow");
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(header.noncePrefix(), 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        putInt(nonce, NONCE_PREFIX_LENGTH, (int) index);
+        nonce[NONCE_LENGTH - 1] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Base of the two directions, hands out the bytes of the current segment and asks for the next one when drained.
+     */
+    private abstract static class SegmentInputStream extends InputStream {
+        protected final InputStream source;
+        protected byte[] buffer;
+        protected int position;
+        protected int limit;
+        protected boolean finished;
+
+        SegmentInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        /**
+         * Fill {@link #buffer} with the next segment.
+         *
+         * @return false if there is no segment left
+         */
+        abstract boolean nextSegment() throws IOException;
+
+        @Override
+        public int read() throws IOException {
+            // the last segment may be empty
+            while (position == limit) {
+                if (!nextSegment()) {
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (!nextSegment()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    /**
+     * Reads plaintext from the source and returns the sealed stream, header first.
+     */
+    static final class EncryptInputStream extends SegmentInputStream {
+        private final Cipher cipher;
+        private final SecretKey key;
+        private final Header header;
+        // one byte more than a segment, the extra byte tells whether the segment is the last one
+        private final byte[] plain;
+        private int carried;
+        private long index;
+
+        EncryptInputStream(InputStream source, Cipher cipher, SecretKey key, Header header) {
+            super(source);
+            this.cipher = cipher;
+            this.key = key;
+            this.header = header;
+            this.plain = new byte[header.segmentSize() + 1];
+            this.buffer = new byte[header.segmentSize() + TAG_LENGTH];
+            System.arraycopy(header.encoded(), 0, buffer, 0, HEADER_LENGTH);
+            this.limit = HEADER_LENGTH;
+        }
+
+        @Override
+        boolean nextSegment() throws IOException {
+            if (finished) {
+                return false;
+            }
+            int segmentSize = header.segmentSize();
+            int n = carried + source.readNBytes(plain, carried, segmentSize + 1 - carried);
+            boolean last = n <= segmentSize;
+            try {
+                limit = seal(cipher, key, header, index++, last, plain, 0, last ? n : segmentSize, buffer, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            position = 0;
+            if (last) {
+                finished = true;
+            } else {
+                plain[0] = plain[segmentSize];
+                carried = 1;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads a sealed stream, positioned at the start of segment {@code index}, and returns the plaintext.
+     * <p>
+     * A segment is released only after its tag is checked, a missing last segment is reported as an error.
+     */
+    static final class DecryptInputStream extends SegmentInputStream {
+        private final Cipher cipher;
+        private final SecretKey key;
+        private final Header header;
+        // one byte more than a sealed segment, the extra byte tells whether the segment is the last one
+        private final byte[] sealed;
+        private int carried;
+        private long index;
+        private int skip;
+        private long remaining;
+
+        DecryptInputStream(InputStream source, Cipher cipher, SecretKey key, Header header) {
+            this(source, cipher, key, header, 0, 0, Long.MAX_VALUE);
+        }
+
+        /**
+         * @param index     the segment the source is positioned at
+         * @param skip      plaintext bytes to drop from the first segment
+         * @param remaining plaintext bytes to return at most
+         */
+        DecryptInputStream(InputStream source, Cipher cipher, SecretKey key, Header header, long index, int skip, long remaining) {
+            super(source);
+            this.cipher = cipher;
+            this.key = key;
+            this.header = header;
+            this.sealed = new byte[header.segmentSize() + TAG_LENGTH + 1];
+            this.buffer = new byte[header.segmentSize()];
+            this.index = index;
+            this.skip = skip;
+            this.remaining = remaining;
+        }
+
+        @Override
+        boolean nextSegment() throws IOException {
+            if (finished || remaining == 0) {
+                return false;
+            }
+            int sealedSize = header.segmentSize() + TAG_LENGTH;
+            int n = carried + source.readNBytes(sealed, carried, sealedSize + 1 - carried);
+            if (n < TAG_LENGTH) {
+                throw new IOException("Invalid segmented stream: truncated segment " + index);
+            }
+            boolean last = n <= sealedSize;
+            int plainLength;
+            try {
+                plainLength = open(cipher, key, header, index++, last, sealed, 0, last ? n : sealedSize, buffer, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Invalid segmented stream: segment " + (index - 1) + " failed authentication", e);
+            }
+            position = Math.min(skip, plainLength);
+            skip = 0;
+            limit = (int) Math.min(plainLength, position + remaining);
+            remaining -= limit - position;
+            if (last) {
+                finished = true;
+            } else {
+                sealed[0] = sealed[sealedSize];
+                carried = 1;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.BEROctetString;
+import org.bouncycastle.asn1.BERSequence;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Asn1ReaderTest {
+
+    @Test
+    void testPkcs8() throws Exception {
+        byte[] der = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPrivate().getEncoded();
+        List<String> expected = List.of("S16", "P2", "S16", "P6", "P5", "E16", "P4", "E16");
+        assertEquals(expected, events(new Asn1Reader(der)));
+        assertEquals(expected, events(new Asn1Reader(byteByByte(der))));
+
+        byte[] version = new DerParser(der).readAsn1Object().getParser().readAsn1Object().getValue();
+        try (Asn1Reader reader = new Asn1Reader(byteByByte(der))) {
+            reader.next();
+            reader.next();
+            assertEquals(1, reader.depth());
+            assertEquals(Asn1Reader.TagClass.UNIVERSAL, reader.tagClass());
+            assertEquals(version.length, reader.length());
+            assertArrayEquals(version, reader.readValue());
+        }
+    }
+
+    @Test
+    void testMultiOctetTags() throws Exception {
+        byte[] ber = new DERSequence(new ASN1Encodable[]{
+                new DERTaggedObject(false, BERTags.APPLICATION, 300, new DEROctetString(new byte[]{42})),
+                new DERTaggedObject(true, BERTags.CONTEXT_SPECIFIC, 31, new ASN1Integer(7)),
+                new DERTaggedObject(false, BERTags.PRIVATE, 30, new DEROctetString(new byte[0])),
+        }).getEncoded(ASN1Encoding.DER);
+        assertEquals(List.of("S16", "PA300", "SC31", "P2", "EC31", "PP30", "E16"), events(new Asn1Reader(ber)));
+
+        Asn1Reader reader = new Asn1Reader(ber);
+        reader.next();
+        reader.next();
+        // the identifier 0x5F and two octets of the tag number 300
+        assertEquals(2, reader.offset());
+        assertEquals(6, reader.valueOffset());
+        assertArrayEquals(new byte[]{42}, reader.readValue());
+
+        // a tag number with a leading zero septet
+        assertThrows(IOException.class, () -> new Asn1Reader(new byte[]{0x5F, (byte) 0x80, 0x01, 0x00}).next());
+    }
+
+    @Test
+    void testIndefiniteLength() throws Exception {
+        byte[] ber = new BERSequence(new ASN1Encodable[]{
+                new ASN1Integer(1),
+                new BEROctetString(new ASN1OctetString[]{new DEROctetString(new byte[]{1, 2}), new DEROctetString(new byte[]{3})}),
+        }).getEncoded(ASN1Encoding.BER);
+        assertEquals(List.of("S16", "P2", "S4", "P4", "P4", "E4", "E16"), events(new Asn1Reader(ber)));
+        assertEquals(List.of("S16", "P2", "S4", "P4", "P4", "E4", "E16"), events(new Asn1Reader(byteByByte(ber))));
+
+        Asn1Reader reader = new Asn1Reader(ber);
+        assertEquals(Asn1Reader.Event.START_CONSTRUCTED, reader.next());
+        assertEquals(-1, reader.length());
+
+        // a primitive of indefinite length, an end-of-contents with a length, and a missing end-of-contents
+        assertThrows(IOException.class, () -> events(new Asn1Reader(new byte[]{0x04, (byte) 0x80, 0x01, 0x00, 0x00})));
+        assertThrows(IOException.class, () -> events(new Asn1Reader(new byte[]{0x30, (byte) 0x80, 0x00, 0x01})));
+        assertThrows(EOFException.class, () -> events(new Asn1Reader(new byte[]{0x30, (byte) 0x80, 0x02, 0x01, 0x01})));
+    }
+
+    @Test
+    void testTruncated() throws Exception {
+        byte[] der = KeyPairGenerator.getInstance("EC").generateKeyPair().getPrivate().getEncoded();
+        for (int length = 1; length < der.length; length++) {
+            byte[] truncated = Arrays.copyOf(der, length);
+            assertThrows(EOFException.class, () -> events(new Asn1Reader(truncated)), "" + length);
+            assertThrows(EOFException.class, () -> events(new Asn1Reader(byteByByte(truncated))), "" + length);
+        }
+    }
+
+    @Test
+    void testOverlongLength() {
+        // 9 length octets, a length over Long.MAX_VALUE, an object past the end of its constructed type
+        for (byte[] ber : new byte[][]{
+                {0x04, (byte) 0x89, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+                {0x04, (byte) 0x88, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF},
+                {0x30, 0x03, 0x04, 0x05, 0x01, 0x02, 0x03, 0x04, 0x05},
+        }) {
+            assertThrows(IOException.class, () -> events(new Asn1Reader(ber)), Arrays.toString(ber));
+        }
+    }
+
+    /**
+     * The events of the input, e.g. {@code S16} for the start of a SEQUENCE, {@code PA300} for the primitive
+     * {@code [APPLICATION 300]}.
+     */
+    private static List<String> events(Asn1Reader reader) throws IOException {
+        List<String> events = new ArrayList<>();
+        reader.read(new Asn1Reader.Handler() {
+            @Override
+            public void startConstructed(Asn1Reader reader) {
+                events.add("S" + tag(reader));
+            }
+
+            @Override
+            public void endConstructed(Asn1Reader reader) {
+                events.add("E" + tag(reader));
+            }
+
+            @Override
+            public void primitive(Asn1Reader reader) {
+                events.add("P" + tag(reader));
+            }
+        });
+        return events;
+    }
+
+    private static String tag(Asn1Reader reader) {
+        Asn1Reader.TagClass tagClass = reader.tagClass();
+        return (tagClass == Asn1Reader.TagClass.UNIVERSAL ? "" : tagClass.name().substring(0, 1)) + reader.tagNumber();
+    }
+
+    /**
+     * A stream handing out a byte per read, so every value straddles the reads.
+     */
+    private static InputStream byteByByte(byte[] bytes) {
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+}
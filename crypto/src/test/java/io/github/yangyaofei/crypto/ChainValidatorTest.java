@@ -0,0 +1,152 @@
+package io.github.yangyaofei.crypto;
+
+import io.github.yangyaofei.crypto.TestCertificates.Issued;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.junit.jupiter.api.Test;
+
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChainValidatorTest {
+    private final Issued root;
+    private final Issued intermediate;
+
+    ChainValidatorTest() throws Exception {
+        root = TestCertificates.root("CN=root");
+        intermediate = TestCertificates.intermediate("CN=intermediate", root);
+    }
+
+    @Test
+    void testValidChain() throws Exception {
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(intermediate).build().certificate();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        List<X509Certificate> expected = List.of(leaf, intermediate.certificate(), root.certificate());
+        assertEquals(expected, validator.validate(List.of(leaf, intermediate.certificate())));
+        // the anchor presented with the chain
+        assertEquals(expected, validator.validate(List.of(leaf, intermediate.certificate(), root.certificate())));
+        assertEquals(expected, validator.validateEncoded(List.of(leaf.getEncoded(), intermediate.certificate().getEncoded())));
+        // no intermediate
+        assertThrows(CertificateException.class, () -> validator.validate(List.of(leaf)));
+    }
+
+    @Test
+    void testWrongIssuer() throws Exception {
+        // a CA of the same name as the intermediate, but of another key
+        Issued impostor = TestCertificates.intermediate("CN=intermediate", TestCertificates.root("CN=root"));
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(impostor).build().certificate();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        assertThrows(CertificateException.class, () -> validator.validate(List.of(leaf, intermediate.certificate())));
+        assertThrows(CertificateException.class, () -> validator.validate(List.of(leaf, impostor.certificate())));
+        assertEquals(0, validator.size());
+    }
+
+    @Test
+    void testExpiredIntermediate() throws Exception {
+        Instant now = Instant.now();
+        Issued expired = TestCertificates.builder("CN=expired").issuer(root).ca(-1).keyUsage(KeyUsage.keyCertSign)
+                .validity(now.minus(Duration.ofDays(2)), now.minus(Duration.ofDays(1))).build();
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(expired).build().certificate();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        assertThrows(CertificateExpiredException.class, () -> validator.validate(List.of(leaf, expired.certificate())));
+    }
+
+    @Test
+    void testPathLength() throws Exception {
+        Issued constrained = TestCertificates.builder("CN=constrained").issuer(root).ca(0)
+                .keyUsage(KeyUsage.keyCertSign).build();
+        Issued sub = TestCertificates.intermediate("CN=sub", constrained);
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(sub).build().certificate();
+        X509Certificate direct = TestCertificates.builder("CN=direct").issuer(constrained).build().certificate();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        assertEquals(3, validator.validate(List.of(direct, constrained.certificate())).size());
+        assertThrows(
+                CertificateException.class,
+                () -> validator.validate(List.of(leaf, sub.certificate(), constrained.certificate()))
+        );
+    }
+
+    @Test
+    void testKeyCertSign() throws Exception {
+        Issued signOnly = TestCertificates.builder("CN=sign only").issuer(root).ca(-1)
+                .keyUsage(KeyUsage.digitalSignature).build();
+        Issued noCa = TestCertificates.builder("CN=no ca").issuer(root).build();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        for (Issued issuer : List.of(signOnly, noCa)) {
+            X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(issuer).build().certificate();
+            assertThrows(CertificateException.class, () -> validator.validate(List.of(leaf, issuer.certificate())));
+        }
+    }
+
+    @Test
+    void testExtendedKeyUsage() throws Exception {
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()));
+        X509Certificate server = TestCertificates.builder("CN=server").issuer(intermediate)
+                .extendedKeyUsage(KeyPurposeId.id_kp_serverAuth).build().certificate();
+        assertThrows(CertificateException.class, () -> validator.validate(List.of(server, intermediate.certificate())));
+        assertEquals(0, validator.size());
+
+        X509Certificate client = TestCertificates.builder("CN=client").issuer(intermediate)
+                .extendedKeyUsage(KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth).build().certificate();
+        assertEquals(3, validator.validate(List.of(client, intermediate.certificate())).size());
+    }
+
+    @Test
+    void testCache() throws Exception {
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(intermediate).build().certificate();
+        List<X509Certificate> chain = List.of(leaf, intermediate.certificate());
+        AtomicInteger checks = new AtomicInteger();
+        ChainValidator.RevocationChecker checker = (certificate, issuer) -> checks.incrementAndGet();
+
+        // a remembered chain returns the same path, and is checked for revocation every time
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()), Duration.ofHours(1), 16, checker);
+        List<X509Certificate> path = validator.validate(chain);
+        assertSame(path, validator.validate(chain));
+        assertEquals(1, validator.size());
+        assertEquals(4, checks.get());
+
+        // once the time to live is over the path is built again
+        ChainValidator expiring = new ChainValidator(List.of(root.certificate()), Duration.ZERO, 16, checker);
+        path = expiring.validate(chain);
+        assertNotSame(path, expiring.validate(chain));
+        assertEquals(path, expiring.validate(chain));
+        assertEquals(1, expiring.size());
+
+        validator.invalidateAll();
+        assertEquals(0, validator.size());
+    }
+
+    @Test
+    void testRevocationVeto() throws Exception {
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(intermediate).build().certificate();
+        List<X509Certificate> chain = List.of(leaf, intermediate.certificate());
+        AtomicBoolean revoked = new AtomicBoolean();
+        ChainValidator validator = new ChainValidator(List.of(root.certificate()), Duration.ofHours(1), 16, (certificate, issuer) -> {
+            if (revoked.get() && certificate.equals(leaf)) {
+                throw new CertificateException("revoked");
+            }
+        });
+        List<X509Certificate> path = validator.validate(chain);
+        assertEquals(1, validator.size());
+
+        revoked.set(true);
+        assertThrows(CertificateException.class, () -> validator.validate(chain));
+        assertEquals(0, validator.size());
+
+        revoked.set(false);
+        List<X509Certificate> rebuilt = validator.validate(chain);
+        assertNotSame(path, rebuilt);
+        assertEquals(path, rebuilt);
+    }
+}
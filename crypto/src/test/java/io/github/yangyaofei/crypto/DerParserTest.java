@@ -0,0 +1,125 @@
+package io.github.yangyaofei.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DerParserTest {
+
+    @Test
+    void testRsaPkcs8() throws Exception {
+        RSAPrivateCrtKey key = (RSAPrivateCrtKey) generate("RSA");
+        DerParser keyParser = readPkcs8(new DerParser(key.getEncoded()), "1.2.840.113549.1.1.1");
+        DerParser sequence = keyParser.readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertEquals(BigInteger.ZERO, sequence.readAsn1Object().getInteger());
+        assertEquals(key.getModulus(), sequence.readAsn1Object().getInteger());
+        assertEquals(key.getPublicExponent(), sequence.readAsn1Object().getInteger());
+        assertEquals(key.getPrivateExponent(), sequence.readAsn1Object().getInteger());
+    }
+
+    @Test
+    void testEcPkcs8() throws Exception {
+        ECPrivateKey key = (ECPrivateKey) generate("EC");
+        DerParser parser = new DerParser(key.getEncoded()).readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertEquals(BigInteger.ZERO, parser.readAsn1Object().getInteger());
+        DerParser algorithm = parser.readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertEquals("1.2.840.10045.2.1", algorithm.readAsn1Object(DerParser.OBJECT_OID).getOid());
+        assertEquals("1.2.840.10045.3.1.7", algorithm.readAsn1Object(DerParser.OBJECT_OID).getOid());
+        DerParser ecKey = parser.readAsn1Object(DerParser.OCTET_STRING).getEncapsulatedParser()
+                .readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertEquals(BigInteger.ONE, ecKey.readAsn1Object().getInteger());
+        assertEquals(key.getS(), new BigInteger(1, ecKey.readAsn1Object(DerParser.OCTET_STRING).getValue()));
+    }
+
+    @Test
+    void testEd25519Pkcs8() throws Exception {
+        PrivateKey key = generate("Ed25519");
+        DerParser keyParser = readPkcs8(new DerParser(key.getEncoded()), "1.3.101.112");
+        assertEquals(32, keyParser.readAsn1Object(DerParser.OCTET_STRING).getLength());
+        assertFalse(keyParser.hasRemaining());
+    }
+
+    @Test
+    void testSharedArray() throws Exception {
+        byte[] der = generate("EC").getEncoded();
+        byte[] padded = new byte[der.length + 10];
+        System.arraycopy(der, 0, padded, 7, der.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(der.length).put(der).flip();
+        for (DerParser parser : new DerParser[]{
+                new DerParser(padded, 7, der.length),
+                new DerParser(ByteBuffer.wrap(padded, 7, der.length).slice()),
+                new DerParser(direct),
+        }) {
+            DerParser.Asn1Object sequence = parser.readAsn1Object(DerParser.SEQUENCE);
+            assertFalse(parser.hasRemaining());
+            assertArrayEquals(Arrays.copyOfRange(der, der.length - sequence.getLength(), der.length), sequence.getValue());
+            assertEquals(ByteBuffer.wrap(sequence.getValue()), sequence.getValueBuffer());
+        }
+        // the position of the buffer isn't moved
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    void testTruncated() throws Exception {
+        byte[] der = generate("EC").getEncoded();
+        for (int length = 0; length < der.length; length++) {
+            int truncated = length;
+            assertThrows(IOException.class, () -> new DerParser(Arrays.copyOf(der, truncated)).readAsn1Object(), "" + length);
+        }
+        // the value of an inner object ends past the value of the outer one
+        DerParser inner = new DerParser(new byte[]{0x30, 0x03, 0x04, 0x05, 0x01, 0x02, 0x03, 0x04, 0x05})
+                .readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertThrows(IOException.class, inner::readAsn1Object);
+    }
+
+    @Test
+    void testOverlongLength() {
+        // 5 length octets, the length 0xFFFFFFFF, the reserved 0xFF, a long form length missing its octets
+        for (byte[] der : new byte[][]{
+                {0x04, (byte) 0x85, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00},
+                {0x04, (byte) 0x84, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF},
+                {0x04, (byte) 0xFF},
+                {0x04, (byte) 0x82, 0x01},
+        }) {
+            assertThrows(IOException.class, () -> new DerParser(der).readAsn1Object(), Arrays.toString(der));
+        }
+    }
+
+    @Test
+    void testWrongType() throws Exception {
+        DerParser parser = new DerParser(new byte[]{0x02, 0x01, 0x05});
+        assertThrows(IllegalStateException.class, () -> parser.readAsn1Object(DerParser.SEQUENCE));
+        DerParser.Asn1Object integer = new DerParser(new byte[]{0x02, 0x01, 0x05}).readAsn1Object();
+        assertEquals(BigInteger.valueOf(5), integer.getInteger());
+        assertThrows(IOException.class, integer::getParser);
+        assertThrows(IOException.class, integer::getOid);
+    }
+
+    private static PrivateKey generate(String algorithm) throws Exception {
+        return KeyPairGenerator.getInstance(algorithm).generateKeyPair().getPrivate();
+    }
+
+    /**
+     * Read the version and the algorithm of a PKCS#8 PrivateKeyInfo, returning the parser of the key.
+     */
+    private static DerParser readPkcs8(DerParser parser, String oid) throws IOException {
+        DerParser privateKeyInfo = parser.readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertFalse(parser.hasRemaining());
+        assertEquals(BigInteger.ZERO, privateKeyInfo.readAsn1Object().getInteger());
+        DerParser algorithm = privateKeyInfo.readAsn1Object(DerParser.SEQUENCE).getParser();
+        assertEquals(oid, algorithm.readAsn1Object(DerParser.OBJECT_OID).getOid());
+        return privateKeyInfo.readAsn1Object(DerParser.OCTET_STRING).getEncapsulatedParser();
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.yangyaofei.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EnvelopeCryptoTest {
+    private final Random random = new Random(42);
+
+    @Test
+    void testRoundTrip() throws Exception {
+        for (AeadAlgorithm algorithm : AeadAlgorithm.values()) {
+            EnvelopeCrypto envelopeCrypto = new EnvelopeCrypto("k1", key(algorithm), algorithm);
+            byte[] data = data(1000);
+            assertArrayEquals(data, envelopeCrypto.decrypt(envelopeCrypto.encrypt(data)));
+            byte[] envelope = envelopeCrypto.encrypt(new ByteArrayInputStream(data)).readAllBytes();
+            assertArrayEquals(data, envelopeCrypto.decrypt(new ByteArrayInputStream(envelope)).readAllBytes());
+        }
+    }
+
+    @Test
+    void testRewrap() throws Exception {
+        SecretKey oldKey = key(AeadAlgorithm.CHACHA20_POLY_1305);
+        EnvelopeCrypto envelopeCrypto = new EnvelopeCrypto("k1", oldKey, AeadAlgorithm.CHACHA20_POLY_1305);
+        byte[] data = data(1000);
+        byte[] envelope = envelopeCrypto.encrypt(data);
+        envelopeCrypto.rotate("k2", key(AeadAlgorithm.CHACHA20_POLY_1305));
+        byte[] rewrapped = envelopeCrypto.rewrap(envelope);
+        assertEquals("k2", EnvelopeCrypto.masterKeyId(rewrapped));
+        envelopeCrypto.removeMasterKey("k1");
+        assertArrayEquals(data, envelopeCrypto.decrypt(rewrapped));
+        assertThrows(InvalidKeyException.class, () -> envelopeCrypto.decrypt(envelope));
+    }
+
+    @Test
+    void testWrappingKeyIsDerived() throws Exception {
+        SecretKey masterKey = key(AeadAlgorithm.CHACHA20_POLY_1305);
+        byte[] envelope = new EnvelopeCrypto("k1", masterKey, AeadAlgorithm.CHACHA20_POLY_1305).encrypt(data(10));
+        // version, algorithm, format, id length and the id "k1"
+        int wrapOffset = 6;
+        assertThrows(AEADBadTagException.class, () -> CryptoUtils.decrypt(
+                envelope, wrapOffset, CryptoUtils.sealedLength(32), new byte[32], 0, masterKey,
+                Arrays.copyOf(envelope, wrapOffset), AeadAlgorithm.CHACHA20_POLY_1305
+        ));
+    }
+
+    @Test
+    void testRewrapOtherAlgorithm() throws Exception {
+        for (AeadAlgorithm from : AeadAlgorithm.values()) {
+            for (AeadAlgorithm to : AeadAlgorithm.values()) {
+                SecretKey oldKey = key(from);
+                SecretKey newKey = key(to);
+                byte[] data = data(1000);
+                EnvelopeCrypto writer = new EnvelopeCrypto("old", oldKey, from);
+                byte[] message = writer.encrypt(data);
+                byte[] stream = writer.encrypt(new ByteArrayInputStream(data)).readAllBytes();
+
+                EnvelopeCrypto rotated = new EnvelopeCrypto("new", newKey, to);
+                rotated.addMasterKey("old", oldKey);
+                byte[] rewrappedMessage = rotated.rewrap(message);
+                ByteArrayOutputStream rewrappedStream = new ByteArrayOutputStream();
+                rotated.rewrap(new ByteArrayInputStream(stream), rewrappedStream);
+
+                // a fresh instance, so nothing comes from the data key cache
+                EnvelopeCrypto reader = new EnvelopeCrypto("new", newKey, to);
+                String pair = from + " to " + to;
+                assertEquals("new", EnvelopeCrypto.masterKeyId(rewrappedMessage), pair);
+                assertArrayEquals(data, reader.decrypt(rewrappedMessage), pair);
+                assertArrayEquals(
+                        data, reader.decrypt(new ByteArrayInputStream(rewrappedStream.toByteArray())).readAllBytes(), pair
+                );
+            }
+        }
+    }
+
+    private byte[] data(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private SecretKey key(AeadAlgorithm algorithm) {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new SecretKeySpec(key, algorithm.getKeyAlgorithm());
+    }
+}
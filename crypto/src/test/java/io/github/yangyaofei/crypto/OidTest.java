@@ -0,0 +1,113 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OidTest {
+    private static final String[] OIDS = {
+            "1.2.840.113549.1.1.1",
+            "1.2.840.10045.3.1.7",
+            "1.3.101.112",
+            "2.16.840.1.101.3.4.1.42",
+            "0.9.2342.19200300.100.1.25",
+            "2.999.3",
+            "1.3.6.1.4.1.311.60.2.1.3",
+    };
+
+    @Test
+    void testRoundTrip() throws Exception {
+        for (String dotted : OIDS) {
+            byte[] der = contents(dotted);
+            Oid oid = Oid.of(dotted);
+            assertArrayEquals(der, oid.getEncoded(), dotted);
+            assertEquals(dotted, oid.toString());
+            byte[] padded = new byte[der.length + 4];
+            System.arraycopy(der, 0, padded, 2, der.length);
+            assertSame(oid, Oid.decode(padded, 2, der.length), dotted);
+            assertTrue(oid.matches(padded, 2, der.length), dotted);
+        }
+    }
+
+    @Test
+    void testDecodeUnknown() throws Exception {
+        // a UUID OID, its arc is more than 64 bits
+        String dotted = "2.25.329800735698586629295641978511506172918";
+        byte[] der = contents(dotted);
+        Oid oid = Oid.decode(der, 0, der.length);
+        assertEquals(dotted, oid.toString());
+        assertArrayEquals(der, oid.getEncoded());
+        assertSame(oid, Oid.decode(der.clone(), 0, der.length));
+        assertEquals(oid, Oid.decode(der, 0, der.length));
+        assertEquals(oid.hashCode(), Oid.decode(der, 0, der.length).hashCode());
+    }
+
+    @Test
+    void testParsers() throws Exception {
+        Oid rsa = Oid.of("1.2.840.113549.1.1.1");
+        byte[] der = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPrivate().getEncoded();
+        DerParser parser = new DerParser(der).readAsn1Object(DerParser.SEQUENCE).getParser();
+        parser.readAsn1Object();
+        DerParser.Asn1Object algorithm = parser.readAsn1Object(DerParser.SEQUENCE).getParser().readAsn1Object();
+        assertTrue(algorithm.isOid(rsa));
+        assertFalse(algorithm.isOid(Oid.of("1.2.840.10045.2.1")));
+        assertSame(rsa, algorithm.getObjectIdentifier());
+
+        Asn1Reader reader = new Asn1Reader(der);
+        for (int i = 0; i < 4; i++) {
+            reader.next();
+        }
+        assertSame(rsa, reader.readObjectIdentifier());
+        reader.next();
+        assertThrows(IOException.class, reader::readObjectIdentifier);
+    }
+
+    @Test
+    void testStartsWith() {
+        Oid aes = Oid.of("2.16.840.1.101.3.4.1");
+        assertTrue(Oid.of("2.16.840.1.101.3.4.1.42").startsWith(aes));
+        assertFalse(Oid.of("2.16.840.1.101.3.4.10").startsWith(aes));
+        assertFalse(aes.startsWith(aes));
+        assertFalse(Oid.of("2.16.840.1.101.3.4.2.1").startsWith(aes));
+    }
+
+    @Test
+    void testInvalidEncoding() throws Exception {
+        // empty, the last sub-identifier truncated, a leading zero octet in the first and in a later sub-identifier
+        for (byte[] der : new byte[][]{
+                {},
+                {0x2A, (byte) 0x86},
+                {(byte) 0x80, 0x2A},
+                {0x2A, (byte) 0x80, 0x01},
+        }) {
+            assertThrows(IOException.class, () -> Oid.decode(der, 0, der.length), Arrays.toString(der));
+        }
+        byte[] der = contents("1.2.840.113549.1.1.1");
+        assertFalse(Oid.of("1.2.840.113549.1.1.1").matches(der, 0, der.length - 1));
+    }
+
+    @Test
+    void testInvalidDotted() {
+        for (String dotted : new String[]{"1", "1.", "3.1", "1.40", "1.-2", "1.2.x", "1.2.99999999999999999999"}) {
+            assertThrows(IllegalArgumentException.class, () -> Oid.of(dotted), dotted);
+        }
+    }
+
+    /**
+     * The content octets of the DER encoding by Bouncy Castle, without tag and length.
+     */
+    private static byte[] contents(String dotted) throws IOException {
+        byte[] der = new ASN1ObjectIdentifier(dotted).getEncoded();
+        return Arrays.copyOfRange(der, 2, der.length);
+    }
+}
@@ -0,0 +1,243 @@
+package io.github.yangyaofei.crypto;
+
+import io.github.yangyaofei.crypto.TestCertificates.Issued;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevocationIndexTest {
+    private static final BigInteger A = BigInteger.valueOf(1000);
+    private static final BigInteger B = BigInteger.valueOf(1001);
+    private static final BigInteger C = BigInteger.valueOf(1002);
+
+    private final Issued ca;
+
+    RevocationIndexTest() throws Exception {
+        ca = TestCertificates.root("CN=ca");
+    }
+
+    @Test
+    void testBaseDeltaAndNewerBase() throws Exception {
+        RevocationIndex index = new RevocationIndex();
+        X509v2CRLBuilder base = crl(1);
+        base.addCRLEntry(A, new Date(), CRLReason.keyCompromise);
+        base.addCRLEntry(B, new Date(), CRLReason.certificateHold);
+        assertTrue(index.load(sign(base, ca), ca.certificate()));
+        assertTrue(index.isRevoked(issuer(), A));
+        assertTrue(index.isRevoked(issuer(), B));
+        assertFalse(index.isRevoked(issuer(), C));
+        assertEquals(java.security.cert.CRLReason.KEY_COMPROMISE, index.getRevocation(issuer(), A).orElseThrow().reason());
+        assertEquals(BigInteger.ONE, index.getBaseCrl(issuer()).orElseThrow().number());
+        assertEquals(2, index.getBaseCrl(issuer()).orElseThrow().size());
+
+        // the hold on B is lifted, C is revoked
+        X509v2CRLBuilder delta = delta(2, 1);
+        delta.addCRLEntry(B, new Date(), CRLReason.removeFromCRL);
+        delta.addCRLEntry(C, new Date(), CRLReason.superseded);
+        byte[] deltaCrl = sign(delta, ca);
+        assertTrue(index.load(deltaCrl, ca.certificate()));
+        assertTrue(index.isRevoked(issuer(), A));
+        assertFalse(index.isRevoked(issuer(), B));
+        assertTrue(index.isRevoked(issuer(), C));
+        assertTrue(index.getDeltaCrl(issuer()).orElseThrow().isDelta());
+        assertEquals(BigInteger.ONE, index.getDeltaCrl(issuer()).orElseThrow().baseNumber());
+
+        // a newer base replaces base and delta
+        X509v2CRLBuilder newBase = crl(3);
+        newBase.addCRLEntry(B, new Date(), CRLReason.keyCompromise);
+        assertTrue(index.load(sign(newBase, ca), ca.certificate()));
+        assertFalse(index.isRevoked(issuer(), A));
+        assertTrue(index.isRevoked(issuer(), B));
+        assertFalse(index.isRevoked(issuer(), C));
+        assertFalse(index.getDeltaCrl(issuer()).isPresent());
+
+        // the delta of the old base is older than the new base, it must not lift the revocation of B
+        assertFalse(index.load(deltaCrl, ca.certificate()));
+        assertTrue(index.isRevoked(issuer(), B));
+    }
+
+    @Test
+    void testStaleCrl() throws Exception {
+        RevocationIndex index = new RevocationIndex();
+        X509v2CRLBuilder newer = crl(5);
+        newer.addCRLEntry(A, new Date(), CRLReason.keyCompromise);
+        X509v2CRLBuilder older = crl(4);
+        older.addCRLEntry(B, new Date(), CRLReason.keyCompromise);
+        byte[] newerCrl = sign(newer, ca);
+        assertTrue(index.load(newerCrl, ca.certificate()));
+        assertFalse(index.load(sign(older, ca), ca.certificate()));
+        assertFalse(index.load(newerCrl, ca.certificate()));
+        assertEquals(BigInteger.valueOf(5), index.getBaseCrl(issuer()).orElseThrow().number());
+        assertTrue(index.isRevoked(issuer(), A));
+        assertFalse(index.isRevoked(issuer(), B));
+
+        // a delta of a base the index doesn't have
+        assertFalse(index.load(sign(delta(7, 6), ca), ca.certificate()));
+        assertFalse(index.getDeltaCrl(issuer()).isPresent());
+    }
+
+    @Test
+    void testRejected() throws Exception {
+        RevocationIndex index = new RevocationIndex();
+        Issued other = TestCertificates.root("CN=other");
+        // signed by another key, issued by another CA, not a CRL
+        assertThrows(CRLException.class, () -> index.load(sign(crl(1), other), ca.certificate()));
+        assertThrows(CRLException.class, () -> index.load(sign(crl(other, 1), other), ca.certificate()));
+        assertThrows(CRLException.class, () -> index.load(ca.certificate().getEncoded(), ca.certificate()));
+
+        byte[] signed = sign(crl(1), ca);
+        signed[signed.length - 5] ^= 1;
+        assertThrows(CRLException.class, () -> index.load(signed, ca.certificate()));
+
+        // the scopes of an issuing distribution point, indirect included
+        for (IssuingDistributionPoint idp : List.of(
+                new IssuingDistributionPoint(null, true, false, null, false, false),
+                new IssuingDistributionPoint(null, false, true, null, false, false),
+                new IssuingDistributionPoint(null, false, false, null, true, false)
+        )) {
+            X509v2CRLBuilder scoped = crl(1);
+            scoped.addExtension(Extension.issuingDistributionPoint, true, idp);
+            assertThrows(CRLException.class, () -> index.load(sign(scoped, ca), ca.certificate()), idp.toString());
+        }
+        // an entry of another issuer
+        X509v2CRLBuilder indirect = crl(1);
+        indirect.addCRLEntry(A, new Date(), new Extensions(new Extension(
+                Extension.certificateIssuer, true, new GeneralNames(new GeneralName(new X500Name("CN=other"))).getEncoded()
+        )));
+        assertThrows(CRLException.class, () -> index.load(sign(indirect, ca), ca.certificate()));
+        assertFalse(index.getBaseCrl(issuer()).isPresent());
+    }
+
+    @Test
+    void testCheck() throws Exception {
+        X509Certificate revoked = TestCertificates.builder("CN=revoked").issuer(ca).build().certificate();
+        X509Certificate valid = TestCertificates.builder("CN=valid").issuer(ca).build().certificate();
+        X509v2CRLBuilder current = crl(1);
+        current.addCRLEntry(revoked.getSerialNumber(), new Date(), CRLReason.keyCompromise);
+        byte[] currentCrl = sign(current, ca);
+
+        RevocationIndex strict = new RevocationIndex(true);
+        assertThrows(CertificateException.class, () -> strict.check(valid, ca.certificate()));
+        strict.load(currentCrl, ca.certificate());
+        strict.check(valid, ca.certificate());
+        CertificateRevokedException e = assertThrows(CertificateRevokedException.class, () -> strict.check(revoked, ca.certificate()));
+        assertEquals(java.security.cert.CRLReason.KEY_COMPROMISE, e.getRevocationReason());
+
+        // past its next update
+        Instant now = Instant.now();
+        X509v2CRLBuilder outdated = new X509v2CRLBuilder(issuerName(), Date.from(now.minus(Duration.ofDays(2))));
+        outdated.setNextUpdate(Date.from(now.minus(Duration.ofDays(1))));
+        outdated.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        byte[] outdatedCrl = sign(outdated, ca);
+        RevocationIndex strictOutdated = new RevocationIndex(true);
+        strictOutdated.load(outdatedCrl, ca.certificate());
+        CertificateException outdatedError = assertThrows(CertificateException.class, () -> strictOutdated.check(valid, ca.certificate()));
+        assertFalse(outdatedError instanceof CertificateRevokedException);
+        RevocationIndex lenient = new RevocationIndex();
+        lenient.load(outdatedCrl, ca.certificate());
+        lenient.check(valid, ca.certificate());
+
+        // a CRL of another key of the same name
+        Issued rekeyed = TestCertificates.root("CN=ca");
+        assertThrows(CertificateException.class, () -> strict.check(valid, rekeyed.certificate()));
+    }
+
+    @Test
+    void testChainValidator() throws Exception {
+        X509Certificate leaf = TestCertificates.builder("CN=leaf").issuer(ca).build().certificate();
+        RevocationIndex index = new RevocationIndex();
+        ChainValidator validator = new ChainValidator(List.of(ca.certificate()), Duration.ofHours(1), 16, index);
+        assertEquals(2, validator.validate(List.of(leaf)).size());
+        X509v2CRLBuilder crl = crl(1);
+        crl.addCRLEntry(leaf.getSerialNumber(), new Date(), CRLReason.keyCompromise);
+        index.load(sign(crl, ca), ca.certificate());
+        assertThrows(CertificateRevokedException.class, () -> validator.validate(List.of(leaf)));
+    }
+
+    @Test
+    void testLoadPem(@TempDir Path directory) throws Exception {
+        X509v2CRLBuilder base = crl(1);
+        base.addCRLEntry(A, new Date(), CRLReason.keyCompromise);
+        X509v2CRLBuilder delta = delta(2, 1);
+        delta.addCRLEntry(B, new Date(), CRLReason.keyCompromise);
+        Path path = directory.resolve("ca.crl");
+        Files.writeString(path, pem(sign(base, ca)) + pem(sign(delta, ca)), StandardCharsets.US_ASCII);
+        RevocationIndex index = new RevocationIndex();
+        assertEquals(2, index.load(path, ca.certificate()));
+        assertTrue(index.isRevoked(issuer(), A));
+        assertTrue(index.isRevoked(issuer(), B));
+
+        Files.write(path, sign(crl(3), ca));
+        assertEquals(1, index.load(path, ca.certificate()));
+        assertFalse(index.isRevoked(issuer(), A));
+    }
+
+    private X500Name issuerName() {
+        return X500Name.getInstance(ca.certificate().getSubjectX500Principal().getEncoded());
+    }
+
+    private X500Principal issuer() {
+        return ca.certificate().getSubjectX500Principal();
+    }
+
+    /**
+     * A full CRL of the CA, issued an hour ago, with the next update in a day.
+     */
+    private X509v2CRLBuilder crl(int number) throws Exception {
+        return crl(ca, number);
+    }
+
+    private static X509v2CRLBuilder crl(Issued issuer, int number) throws Exception {
+        Instant now = Instant.now();
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(
+                X500Name.getInstance(issuer.certificate().getSubjectX500Principal().getEncoded()),
+                Date.from(now.minus(Duration.ofHours(1)))
+        );
+        builder.setNextUpdate(Date.from(now.plus(Duration.ofDays(1))));
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(number)));
+        return builder;
+    }
+
+    private X509v2CRLBuilder delta(int number, int baseNumber) throws Exception {
+        X509v2CRLBuilder builder = crl(number);
+        builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(baseNumber)));
+        return builder;
+    }
+
+    private static byte[] sign(X509v2CRLBuilder builder, Issued signer) throws Exception {
+        return builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signer.keyPair().getPrivate())).getEncoded();
+    }
+
+    private static String pem(byte[] der) {
+        return "-----BEGIN X509 CRL-----\n" + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der) + "\n-----END X509 CRL-----\n";
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.yangyaofei.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedStreamTest {
+    private static final int SEGMENT_SIZE = SegmentedStream.MIN_SEGMENT_SIZE;
+    private static final int[] LENGTHS = {
+            0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 2 * SEGMENT_SIZE, 3 * SEGMENT_SIZE + 7
+    };
+
+    private final Random random = new Random(42);
+
+    @Test
+    void testRoundTrip() throws Exception {
+        for (AeadAlgorithm algorithm : AeadAlgorithm.values()) {
+            SecretKey key = key(algorithm);
+            for (int length : LENGTHS) {
+                byte[] data = data(length);
+                byte[] sealed = encrypt(data, key, algorithm);
+                assertEquals(SegmentedStream.ciphertextLength(length, SEGMENT_SIZE), sealed.length, algorithm + " " + length);
+                assertArrayEquals(data, CryptoUtils.decryptSegmented(new ByteArrayInputStream(sealed), key).readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testRoundTripByteByByte() throws Exception {
+        SecretKey key = key(AeadAlgorithm.CHACHA20_POLY_1305);
+        for (int length : LENGTHS) {
+            byte[] data = data(length);
+            byte[] sealed = readByteByByte(CryptoUtils.encryptSegmented(new ByteArrayInputStream(data), key, SEGMENT_SIZE));
+            assertEquals(SegmentedStream.ciphertextLength(length, SEGMENT_SIZE), sealed.length, "" + length);
+            assertArrayEquals(data, readByteByByte(CryptoUtils.decryptSegmented(new ByteArrayInputStream(sealed), key)));
+        }
+    }
+
+    @Test
+    void testTampered() throws Exception {
+        SecretKey key = key(AeadAlgorithm.CHACHA20_POLY_1305);
+        for (int length : LENGTHS) {
+            byte[] sealed = encrypt(data(length), key, AeadAlgorithm.CHACHA20_POLY_1305);
+            // the algorithm byte, the segment size, the nonce prefix, the first and the last byte of the segments
+            for (int offset : new int[]{3, 6, SegmentedStream.HEADER_LENGTH, sealed.length - 1}) {
+                byte[] tampered = sealed.clone();
+                tampered[offset] ^= 1;
+                assertThrows(IOException.class, () -> decrypt(tampered, key), length + " at " + offset);
+            }
+        }
+    }
+
+    @Test
+    void testTruncated() throws Exception {
+        SecretKey key = key(AeadAlgorithm.CHACHA20_POLY_1305);
+        for (int length : LENGTHS) {
+            byte[] sealed = encrypt(data(length), key, AeadAlgorithm.CHACHA20_POLY_1305);
+            int sealedSegment = SEGMENT_SIZE + SegmentedStream.TAG_LENGTH;
+            // a byte short, the header only, and every whole segment but the last one
+            assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(sealed, sealed.length - 1), key), "" + length);
+            assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(sealed, SegmentedStream.HEADER_LENGTH), key), "" + length);
+            for (int end = SegmentedStream.HEADER_LENGTH + sealedSegment; end < sealed.length; end += sealedSegment) {
+                int truncated = end;
+                assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(sealed, truncated), key), length + " at " + end);
+            }
+        }
+    }
+
+    @Test
+    void testWrongKey() throws Exception {
+        byte[] sealed = encrypt(data(100), key(AeadAlgorithm.CHACHA20_POLY_1305), AeadAlgorithm.CHACHA20_POLY_1305);
+        assertThrows(IOException.class, () -> decrypt(sealed, key(AeadAlgorithm.CHACHA20_POLY_1305)));
+    }
+
+    private byte[] data(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private SecretKey key(AeadAlgorithm algorithm) {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new SecretKeySpec(key, algorithm.getKeyAlgorithm());
+    }
+
+    private static byte[] encrypt(byte[] data, SecretKey key, AeadAlgorithm algorithm) throws Exception {
+        return CryptoUtils.encryptSegmented(new ByteArrayInputStream(data), key, SEGMENT_SIZE, algorithm).readAllBytes();
+    }
+
+    private static byte[] decrypt(byte[] sealed, SecretKey key) throws Exception {
+        return CryptoUtils.decryptSegmented(new ByteArrayInputStream(sealed), key).readAllBytes();
+    }
+
+    private static byte[] readByteByByte(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = in.read(); b != -1; b = in.read()) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
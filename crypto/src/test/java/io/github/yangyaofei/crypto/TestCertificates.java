@@ -0,0 +1,161 @@
+package io.github.yangyaofei.crypto;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Certificates for tests, EC P-256 keys signed with SHA256withECDSA.
+ */
+final class TestCertificates {
+    private static final AtomicLong SERIAL = new AtomicLong(1);
+
+    private TestCertificates() {
+    }
+
+    /**
+     * A certificate with the key pair of its subject.
+     */
+    record Issued(X509Certificate certificate, KeyPair keyPair) {
+    }
+
+    /**
+     * A builder of a certificate valid from an hour ago for a day, without extensions but the key identifiers.
+     *
+     * @param subject the subject, e.g. {@code CN=leaf}
+     * @return the builder
+     */
+    static Builder builder(String subject) {
+        return new Builder(subject);
+    }
+
+    /**
+     * A self-signed CA allowed to sign certificates and CRLs.
+     */
+    static Issued root(String subject) throws Exception {
+        return builder(subject).ca(-1).keyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign).build();
+    }
+
+    /**
+     * A CA issued by {@code issuer}, allowed to sign certificates and CRLs.
+     */
+    static Issued intermediate(String subject, Issued issuer) throws Exception {
+        return builder(subject).issuer(issuer).ca(-1).keyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign).build();
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        return KeyPairGenerator.getInstance("EC").generateKeyPair();
+    }
+
+    static final class Builder {
+        private final String subject;
+        private KeyPair keyPair;
+        @Nullable
+        private Issued issuer;
+        private Instant notBefore = Instant.now().minus(Duration.ofHours(1));
+        private Instant notAfter = Instant.now().plus(Duration.ofDays(1));
+        @Nullable
+        private BasicConstraints basicConstraints;
+        @Nullable
+        private KeyUsage keyUsage;
+        @Nullable
+        private ExtendedKeyUsage extendedKeyUsage;
+
+        private Builder(String subject) {
+            this.subject = subject;
+        }
+
+        /**
+         * The issuer, self-signed if none.
+         */
+        Builder issuer(Issued issuer) {
+            this.issuer = issuer;
+            return this;
+        }
+
+        /**
+         * The key pair of the subject, a new one if none.
+         */
+        Builder keyPair(KeyPair keyPair) {
+            this.keyPair = keyPair;
+            return this;
+        }
+
+        Builder validity(Instant notBefore, Instant notAfter) {
+            this.notBefore = notBefore;
+            this.notAfter = notAfter;
+            return this;
+        }
+
+        /**
+         * A CA with a path length constraint, none if negative.
+         */
+        Builder ca(int pathLength) {
+            this.basicConstraints = pathLength < 0 ? new BasicConstraints(true) : new BasicConstraints(pathLength);
+            return this;
+        }
+
+        /**
+         * The key usage, the bits of {@link KeyUsage}.
+         */
+        Builder keyUsage(int usage) {
+            this.keyUsage = new KeyUsage(usage);
+            return this;
+        }
+
+        Builder extendedKeyUsage(KeyPurposeId... purposes) {
+            this.extendedKeyUsage = new ExtendedKeyUsage(purposes);
+            return this;
+        }
+
+        Issued build() throws Exception {
+            KeyPair subjectKeyPair = keyPair != null ? keyPair : generateKeyPair();
+            KeyPair signingKeyPair = issuer != null ? issuer.keyPair() : subjectKeyPair;
+            X500Name subjectName = new X500Name(subject);
+            X500Name issuerName = issuer != null
+                    ? X500Name.getInstance(issuer.certificate().getSubjectX500Principal().getEncoded())
+                    : subjectName;
+            JcaX509ExtensionUtils extUtils = new JcaX509ExtensionUtils();
+            JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                    issuerName,
+                    BigInteger.valueOf(SERIAL.getAndIncrement()),
+                    Date.from(notBefore),
+                    Date.from(notAfter),
+                    subjectName,
+                    subjectKeyPair.getPublic()
+            );
+            builder.addExtension(Extension.subjectKeyIdentifier, false, extUtils.createSubjectKeyIdentifier(subjectKeyPair.getPublic()));
+            builder.addExtension(Extension.authorityKeyIdentifier, false, extUtils.createAuthorityKeyIdentifier(signingKeyPair.getPublic()));
+            if (basicConstraints != null) {
+                builder.addExtension(Extension.basicConstraints, true, basicConstraints);
+            }
+            if (keyUsage != null) {
+                builder.addExtension(Extension.keyUsage, true, keyUsage);
+            }
+            if (extendedKeyUsage != null) {
+                builder.addExtension(Extension.extendedKeyUsage, false, extendedKeyUsage);
+            }
+            X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+                    builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signingKeyPair.getPrivate()))
+            );
+            return new Issued(certificate, subjectKeyPair);
+        }
+    }
+}